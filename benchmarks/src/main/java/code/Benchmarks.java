@@ -0,0 +1,20 @@
+package code;
+
+import org.openjdk.jmh.Main;
+
+import java.util.Arrays;
+
+// Runs JMH as its own main would, except that unless told otherwise the
+// results are also written as JSON to jmh-result.json, ready to compare
+// against a run from another commit.
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        if (!Arrays.asList(args).contains("-rf")) {
+            String[] defaults = {"-rf", "json", "-rff", "jmh-result.json"};
+            String[] all = Arrays.copyOf(defaults, defaults.length + args.length);
+            System.arraycopy(args, 0, all, defaults.length, args.length);
+            args = all;
+        }
+        Main.main(args);
+    }
+}
@@ -0,0 +1,64 @@
+package code;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lexing and parsing a large generated program. Divide the source size
+// (chunks times about 300 characters) by the time per operation for
+// throughput in characters per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+    @Param({"1000", "20000"})
+    public int chunks;
+
+    private String source;
+    private List<Token> tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = Workloads.large(chunks);
+        Reporter reporter = new Reporter(System.err);
+        tokens = new Scanner(source, new SymbolTable(), reporter).scanTokens();
+        new Parser(tokens, reporter).parse();
+        if (reporter.hadError) throw new IllegalStateException("The generated program does not parse.");
+    }
+
+    @Benchmark
+    public List<Token> scanTokens() {
+        return new Scanner(source, new SymbolTable(), new Reporter(System.err)).scanTokens();
+    }
+
+    @Benchmark
+    public TokenBuffer scanBuffer() {
+        return new Scanner(source, new SymbolTable(), new Reporter(System.err)).scanBuffer();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens, new Reporter(System.err)).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> scanAndParse() {
+        Reporter reporter = new Reporter(System.err);
+        return new Parser(new Scanner(source, new SymbolTable(), reporter).scanBuffer(), reporter).parse();
+    }
+}
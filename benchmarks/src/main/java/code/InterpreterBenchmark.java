@@ -0,0 +1,44 @@
+package code;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// One whole run of a compiled workload per operation: a fresh Interpreter
+// and globals, DISPLAY going nowhere. Compiling is done once, outside the
+// measurement.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({"fizzbuzz", "nestedLoops", "concatenation", "floatMath", "ifChain"})
+    public String workload;
+
+    private CompiledProgram program;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        program = CodeEngine.compile(Workloads.named(workload));
+    }
+
+    @Benchmark
+    public void interpret() {
+        program.run(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+    }
+}
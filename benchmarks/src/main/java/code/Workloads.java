@@ -0,0 +1,120 @@
+package code;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// The CODE programs the benchmarks run. Each interpreter workload leans on
+// one part of the Interpreter and displays a single result at the end, so
+// output costs almost nothing next to the work being measured.
+final class Workloads {
+    private Workloads() {}
+
+    static String named(String name) {
+        switch (name) {
+            case "fizzbuzz": return fizzBuzz();
+            case "nestedLoops": return nestedLoops();
+            case "concatenation": return concatenation();
+            case "floatMath": return floatMath();
+            case "ifChain": return ifChain(50);
+            default: throw new IllegalArgumentException("No workload named " + name + ".");
+        }
+    }
+
+    // src/test2.code, copied onto the classpath by the build.
+    static String fizzBuzz() {
+        try (InputStream in = Workloads.class.getResourceAsStream("/test2.code")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    static String nestedLoops() {
+        return "BEGIN CODE\n"
+                + "    INT i = 0, j, sum = 0\n"
+                + "    WHILE (i < 300)\n"
+                + "    BEGIN WHILE\n"
+                + "        j = 0\n"
+                + "        WHILE (j < 300)\n"
+                + "        BEGIN WHILE\n"
+                + "            sum = sum + i * j % 7\n"
+                + "            j = j + 1\n"
+                + "        END WHILE\n"
+                + "        i = i + 1\n"
+                + "    END WHILE\n"
+                + "    DISPLAY: sum\n"
+                + "END CODE\n";
+    }
+
+    static String concatenation() {
+        return "BEGIN CODE\n"
+                + "    INT i = 0\n"
+                + "    STRING s = \"\"\n"
+                + "    WHILE (i < 2000)\n"
+                + "    BEGIN WHILE\n"
+                + "        s = s & i & [#] & 'c' & TRUE\n"
+                + "        i = i + 1\n"
+                + "    END WHILE\n"
+                + "    DISPLAY: s\n"
+                + "END CODE\n";
+    }
+
+    static String floatMath() {
+        return "BEGIN CODE\n"
+                + "    INT i = 0\n"
+                + "    FLOAT x = 0.0, y = 1.5\n"
+                + "    WHILE (i < 100000)\n"
+                + "    BEGIN WHILE\n"
+                + "        x = x + y * 0.5 - x / 3.0\n"
+                + "        y = -y\n"
+                + "        i = i + 1\n"
+                + "    END WHILE\n"
+                + "    DISPLAY: x\n"
+                + "END CODE\n";
+    }
+
+    // One IF with branches - 1 ELSE IFs, taken in turn, so on average half
+    // of the conditions are tested on every iteration.
+    static String ifChain(int branches) {
+        StringBuilder source = new StringBuilder();
+        source.append("BEGIN CODE\n")
+                .append("    INT i = 0, hits = 0\n")
+                .append("    WHILE (i < 20000)\n")
+                .append("    BEGIN WHILE\n");
+        for (int branch = 0; branch < branches; branch++) {
+            source.append(branch == 0 ? "        IF" : "        ELSE IF")
+                    .append(" (i % ").append(branches).append(" == ").append(branch).append(")\n")
+                    .append("        BEGIN IF\n")
+                    .append("            hits = hits + ").append(branch).append('\n')
+                    .append("        END IF\n");
+        }
+        source.append("        i = i + 1\n")
+                .append("    END WHILE\n")
+                .append("    DISPLAY: hits\n")
+                .append("END CODE\n");
+        return source.toString();
+    }
+
+    // A long program for the Scanner and Parser: every chunk declares its
+    // own variables and uses every kind of token, including escapes.
+    static String large(int chunks) {
+        StringBuilder source = new StringBuilder("BEGIN CODE\n");
+        for (int k = 0; k < chunks; k++) {
+            source.append("    # chunk ").append(k).append('\n')
+                    .append("    INT a").append(k).append(" = ").append(k).append(", b").append(k)
+                    .append(" = a").append(k).append(" * 2 + (3 - 1) / 4\n")
+                    .append("    FLOAT f").append(k).append(" = ").append(k).append(".25\n")
+                    .append("    STRING s").append(k).append(" = \"chunk [#] ").append(k).append("\"\n")
+                    .append("    CHAR c").append(k).append(" = 'x'\n")
+                    .append("    IF (a").append(k).append(" >= b").append(k).append(" OR NOT (a").append(k)
+                    .append(" <> 3))\n")
+                    .append("    BEGIN IF\n")
+                    .append("        DISPLAY: s").append(k).append(" & $ & b").append(k).append(" & c").append(k)
+                    .append(" & [[]\n")
+                    .append("    END IF\n");
+        }
+        return source.append("END CODE\n").toString();
+    }
+}
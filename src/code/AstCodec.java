@@ -0,0 +1,372 @@
+package code;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns a parsed program into bytes and back. Only what the Parser builds
+// is written: the Resolver, TypeChecker and Optimizer run again on the
+// loaded tree. Nodes are written in prefix order as a tag byte and their
+// fields; every lexeme and string value goes in a table in front of them,
+// so each distinct text is stored once. Identifiers are interned into the
+// loading session's SymbolTable as they are read.
+class AstCodec implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final byte NONE = 0;
+    private static final byte BLOCK = 1;
+    private static final byte EXPRESSION = 2;
+    private static final byte IF = 3;
+    private static final byte PRINT = 4;
+    private static final byte SCAN = 5;
+    private static final byte VAR = 6;
+    private static final byte WHILE = 7;
+    private static final byte ASSIGN = 8;
+    private static final byte BINARY = 9;
+    private static final byte GROUPING = 10;
+    private static final byte LITERAL = 11;
+    private static final byte LOGICAL = 12;
+    private static final byte UNARY = 13;
+    private static final byte VARIABLE = 14;
+    private static final byte FOR = 15;
+
+    private static final byte NIL_VALUE = 0;
+    private static final byte FALSE_VALUE = 1;
+    private static final byte TRUE_VALUE = 2;
+    private static final byte INT_VALUE = 3;
+    private static final byte FLOAT_VALUE = 4;
+    private static final byte CHAR_VALUE = 5;
+    private static final byte STRING_VALUE = 6;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> table = new ArrayList<>();
+
+    // Reading state.
+    private ByteBuffer in;
+    private String[] text;
+    private SymbolTable symbols;
+
+    static byte[] encode(List<Stmt> statements) {
+        AstCodec codec = new AstCodec();
+        try {
+            codec.writeStatements(statements);
+
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(file);
+            header.writeInt(codec.table.size());
+            for (String string : codec.table) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                header.writeInt(utf8.length);
+                header.write(utf8);
+            }
+            codec.bytes.writeTo(file);
+            return file.toByteArray();
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    // Throws a RuntimeException of some kind if the bytes are not a tree
+    // this class wrote.
+    static List<Stmt> decode(ByteBuffer in, SymbolTable symbols) {
+        AstCodec codec = new AstCodec();
+        codec.in = in;
+        codec.symbols = symbols;
+        codec.text = new String[in.getInt()];
+        for (int i = 0; i < codec.text.length; i++) {
+            byte[] utf8 = new byte[in.getInt()];
+            in.get(utf8);
+            codec.text[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        List<Stmt> statements = codec.readStatements();
+        if (in.hasRemaining()) throw new IllegalStateException("Trailing bytes after program.");
+        return statements;
+    }
+
+    private void writeStatements(List<Stmt> statements) throws IOException {
+        out.writeInt(statements.size());
+        for (Stmt statement : statements) {
+            write(statement);
+        }
+    }
+
+    private void write(Stmt stmt) {
+        if (stmt == null) {
+            tag(NONE);
+        } else {
+            stmt.accept(this);
+        }
+    }
+
+    private void write(Expr expr) {
+        if (expr == null) {
+            tag(NONE);
+        } else {
+            expr.accept(this);
+        }
+    }
+
+    private void tag(byte tag) {
+        try {
+            out.writeByte(tag);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    private void write(Token token) {
+        try {
+            out.writeByte(token.type.ordinal());
+            out.writeInt(token.line);
+            out.writeInt(string(token.lexeme));
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    private int string(String value) {
+        return strings.computeIfAbsent(value, key -> {
+            table.add(key);
+            return table.size() - 1;
+        });
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        tag(BLOCK);
+        try {
+            writeStatements(stmt.statements);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        tag(EXPRESSION);
+        write(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        tag(FOR);
+        write(stmt.keyword);
+        write(stmt.initializer);
+        write(stmt.condition);
+        write(stmt.increment);
+        write(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        tag(IF);
+        write(stmt.condition);
+        write(stmt.thenBranch);
+        write(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        tag(PRINT);
+        write(stmt.keyword);
+        write(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitScanStmt(Stmt.Scan stmt) {
+        tag(SCAN);
+        try {
+            out.writeInt(stmt.variables.size());
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        for (Expr.Variable variable : stmt.variables) {
+            write(variable.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        tag(VAR);
+        tag((byte) stmt.type.ordinal());
+        write(stmt.name);
+        write(stmt.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        tag(WHILE);
+        write(stmt.keyword);
+        write(stmt.condition);
+        write(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        tag(ASSIGN);
+        write(expr.name);
+        write(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        tag(BINARY);
+        write(expr.left);
+        write(expr.operator);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        tag(GROUPING);
+        write(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        tag(LITERAL);
+        try {
+            Object value = expr.value;
+            if (value == null) {
+                out.writeByte(NIL_VALUE);
+            } else if (value instanceof Boolean bool) {
+                out.writeByte(bool ? TRUE_VALUE : FALSE_VALUE);
+            } else if (value instanceof Integer number) {
+                out.writeByte(INT_VALUE);
+                out.writeInt(number);
+            } else if (value instanceof Double number) {
+                out.writeByte(FLOAT_VALUE);
+                out.writeDouble(number);
+            } else if (value instanceof Character c) {
+                out.writeByte(CHAR_VALUE);
+                out.writeChar(c);
+            } else {
+                out.writeByte(STRING_VALUE);
+                out.writeInt(string(value.toString()));
+            }
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        tag(LOGICAL);
+        write(expr.left);
+        write(expr.operator);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        tag(UNARY);
+        write(expr.operator);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        tag(VARIABLE);
+        write(expr.name);
+        return null;
+    }
+
+    private List<Stmt> readStatements() {
+        int count = in.getInt();
+        if (count < 0) throw new IllegalStateException("Negative statement count.");
+        List<Stmt> statements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            statements.add(readStmt());
+        }
+        return statements;
+    }
+
+    private Stmt readStmt() {
+        byte tag = in.get();
+        switch (tag) {
+            case NONE: return null;
+            case BLOCK: return new Stmt.Block(readStatements());
+            case EXPRESSION: return new Stmt.Expression(readExpr());
+            case FOR: return new Stmt.For(readToken(), readStmt(), readExpr(), readExpr(), readStmt());
+            case IF: return new Stmt.If(readExpr(), readStmt(), readStmt());
+            case PRINT: return new Stmt.Print(readToken(), readExpr());
+            case SCAN: {
+                int count = in.getInt();
+                List<Expr.Variable> variables = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    variables.add(new Expr.Variable(readToken()));
+                }
+                return new Stmt.Scan(variables);
+            }
+            case VAR: {
+                TokenType type = TYPES[in.get()];
+                return new Stmt.Var(readToken(), readExpr(), type);
+            }
+            case WHILE: return new Stmt.While(readToken(), readExpr(), readStmt());
+            default: throw new IllegalStateException("Unknown statement tag " + tag + ".");
+        }
+    }
+
+    private Expr readExpr() {
+        byte tag = in.get();
+        switch (tag) {
+            case NONE: return null;
+            case ASSIGN: return new Expr.Assign(readToken(), readExpr());
+            case BINARY: return new Expr.Binary(readExpr(), readToken(), readExpr());
+            case GROUPING: return new Expr.Grouping(readExpr());
+            case LITERAL: return new Expr.Literal(readValue());
+            case LOGICAL: return new Expr.Logical(readExpr(), readToken(), readExpr());
+            case UNARY: return new Expr.Unary(readToken(), readExpr());
+            case VARIABLE: return new Expr.Variable(readToken());
+            default: throw new IllegalStateException("Unknown expression tag " + tag + ".");
+        }
+    }
+
+    private Object readValue() {
+        byte tag = in.get();
+        switch (tag) {
+            case NIL_VALUE: return null;
+            case FALSE_VALUE: return false;
+            case TRUE_VALUE: return true;
+            case INT_VALUE: return in.getInt();
+            case FLOAT_VALUE: return in.getDouble();
+            case CHAR_VALUE: return in.getChar();
+            case STRING_VALUE: return text[in.getInt()];
+            default: throw new IllegalStateException("Unknown value tag " + tag + ".");
+        }
+    }
+
+    private Token readToken() {
+        TokenType type = TYPES[in.get()];
+        int line = in.getInt();
+        String lexeme = text[in.getInt()];
+        if (type != TokenType.IDENTIFIER) return new Token(type, lexeme, null, line);
+
+        int symbol = symbols.intern(lexeme, 0, lexeme.length());
+        return new Token(type, symbols.name(symbol), null, line, symbol);
+    }
+}
@@ -0,0 +1,44 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class Chunk {
+    private int[] code = new int[64];
+    private int count = 0;
+    private final List<Object> constants = new ArrayList<>();
+
+    // Size of the flat local frame and the deepest operand stack the code needs.
+    int frameSize = 0;
+    int stackSize = 0;
+
+    int write(int value) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        code[count] = value;
+        return count++;
+    }
+
+    void patch(int offset, int value) {
+        code[offset] = value;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int addConstant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    int[] code() {
+        return Arrays.copyOf(code, count);
+    }
+
+    Object[] constants() {
+        return constants.toArray();
+    }
+}
@@ -1,88 +1,288 @@
 package code;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Code {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    private static final Session.Options options = new Session.Options();
+    private static Output output;
 
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("compile")) {
+            if (args.length == 2) {
+                compileFile(args[1], null);
+            } else if (args.length == 4 && args[2].equals("-o")) {
+                compileFile(args[1], args[3]);
+            } else {
+                System.out.println("Usage: code compile [script] -o [jar]");
+                System.exit(64);
+            }
+            return;
+        }
+
         //uncomment the following commented line and comment the others to test
         //runFile("C:\\Users\\User\\IdeaProjects\\code-interpreter\\src\\test.code");
         //runFile("D:\\Program Files\\JetBrains\\IdeaProjects\\code-interpreter\\src\\test.code");
-        if (args.length > 1) {
-            System.out.println("Usage: code [script]");
+        int first = 0;
+        String flush = "scan";
+        String outputFile = null;
+        boolean mapOutput = false;
+        String inputFile = null;
+        String cacheDirectory = null;
+        long cacheLimit = ProgramCache.DEFAULT_LIMIT;
+        boolean batch = false;
+        long workers = Runtime.getRuntime().availableProcessors();
+        boolean serve = false;
+        long port = Server.DEFAULT_PORT;
+        long queue = Server.DEFAULT_QUEUE;
+        long deadline = Server.DEFAULT_DEADLINE;
+        long maxSteps = 0;
+        long maxMillis = 0;
+        long maxOutput = 0;
+        long maxString = 0;
+        String profileFile = null;
+        while (first < args.length && args[first].startsWith("--")) {
+            String option = args[first++];
+            int equals = option.indexOf('=');
+            String value = equals < 0 ? null : option.substring(equals + 1);
+            switch (equals < 0 ? option : option.substring(0, equals)) {
+                case "--vm": options.useVm = true; break;
+                case "--node-counts": options.showNodeCounts = true; break;
+                case "--stream": options.streamSource = true; break;
+                case "--batch": batch = true; break;
+                case "--workers": workers = number(value); break;
+                case "--serve":
+                    serve = true;
+                    if (value != null) port = number(value);
+                    break;
+                case "--queue": queue = number(value); break;
+                case "--deadline": deadline = number(value); break;
+                case "--max-steps": maxSteps = number(value); break;
+                case "--max-millis": maxMillis = number(value); break;
+                case "--max-output": maxOutput = number(value); break;
+                case "--max-string": maxString = number(value); break;
+                case "--profile":
+                    options.profile = true;
+                    profileFile = value != null ? value : "profile.collapsed";
+                    break;
+                case "--sample":
+                    options.profile = true;
+                    options.sampleMicros = value == null ? 1000 : number(value) > 0 ? number(value) : -1;
+                    if (profileFile == null) profileFile = "profile.collapsed";
+                    break;
+                case "--flush": flush = value; break;
+                case "--output": outputFile = value; break;
+                case "--output-mapped": outputFile = value; mapOutput = true; break;
+                case "--input-mapped": inputFile = value; break;
+                case "--cache":
+                    cacheDirectory = value != null ? value
+                            : Paths.get(System.getProperty("java.io.tmpdir"), "code-cache").toString();
+                    break;
+                case "--cache-limit":
+                    try {
+                        cacheLimit = Long.parseLong(value);
+                    } catch (NumberFormatException error) {
+                        cacheLimit = -1;
+                    }
+                    break;
+                default: first = args.length + 1;
+            }
+        }
+
+        int argc = args.length - first;
+        if (argc > 1 || argc < 0 || (inputFile != null && inputFile.isEmpty())
+                || (cacheDirectory != null && cacheDirectory.isEmpty()) || cacheLimit < 0
+                || (batch && (argc != 1 || outputFile != null || inputFile != null)) || workers <= 0
+                || workers > 1024 || (serve && (batch || argc != 0)) || port < 0 || port > 65535
+                || queue <= 0 || queue > Integer.MAX_VALUE || deadline <= 0
+                || maxSteps < 0 || maxMillis < 0 || maxOutput < 0 || maxString < 0 || maxString > Integer.MAX_VALUE
+                || (options.useVm && maxSteps + maxMillis + maxOutput + maxString > 0)
+                || (options.profile && (options.sampleMicros < 0 || options.useVm || batch || serve || argc != 1 || profileFile.isEmpty()))
+                || !setUpOutput(flush, outputFile, mapOutput)) {
+            System.out.println("Usage: code [--vm] [--node-counts] [--stream] [--flush=scan|exit|<bytes>]"
+                    + " [--output=<file> | --output-mapped=<file>] [--input-mapped=<file>]"
+                    + " [--cache[=<dir>]] [--cache-limit=<bytes>] [--max-steps=<n>] [--max-millis=<ms>]"
+                    + " [--max-output=<chars>] [--max-string=<chars>] [--profile[=<file>]]"
+                    + " [--sample[=<micros>]] [script]");
+            System.out.println("       code --batch [--workers=<n>] [options] [directory]");
+            System.out.println("       code --serve[=<port>] [--workers=<n>] [--queue=<n>] [--deadline=<ms>]");
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        }
+        options.limits = new Limits(maxSteps, maxMillis, maxOutput, (int) maxString);
+        if (serve) {
+            Server.serve((int) port, (int) workers, (int) queue, deadline, options.limits);
+            return;
+        }
+        if (cacheDirectory != null) options.cache = new ProgramCache(Paths.get(cacheDirectory), cacheLimit);
+
+        if (batch) {
+            runBatch(Paths.get(args[args.length - 1]), (int) workers);
+            return;
+        }
+
+        Input input = inputFile == null ? Input.stream(System.in) : Input.mapped(Paths.get(inputFile));
+        Session session = new Session(options, new Reporter(System.err), output, input);
+        if (argc == 1) {
+            runFile(session, args[args.length - 1], profileFile);
         } else {
-            runPrompt();
+            runPrompt(session);
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+    // A non-negative whole number, or -1.
+    private static long number(String value) {
+        try {
+            return value == null ? -1 : Math.max(-1, Long.parseLong(value));
+        } catch (NumberFormatException error) {
+            return -1;
+        }
+    }
+
+    private static void runFile(Session session, String path, String profileFile) throws IOException {
+        session.runFile(Paths.get(path));
+        output.close();
+        if (session.profiler() != null) session.profiler().report(System.err, Paths.get(profileFile));
 
         // Indicate an error in the exit code.
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        int status = session.status();
+        if (status != 0) System.exit(status);
     }
 
-    private static void runPrompt() throws IOException {
-        InputStreamReader input = new InputStreamReader(System.in);
-        BufferedReader reader = new BufferedReader(input);
+    // Runs every .code file in a directory, each in its own Session on a
+    // pool of worker threads. A program reads prog.in if there is one and
+    // nothing otherwise; what it displays goes to prog.out and its errors
+    // to prog.err. One line per program with its exit code is printed, in
+    // file name order, once all of them are done.
+    private static void runBatch(Path directory, int workers) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.code")) {
+            for (Path program : files) programs.add(program);
+        }
+        programs.sort(null);
 
-        for (;;) {
-            System.out.print("> ");
-            String line = reader.readLine();
-            if (line == null) break;
-            run(line);
-            hadError = false;
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Path program : programs) {
+            results.add(pool.submit(() -> runProgram(program)));
+        }
+        pool.shutdown();
+
+        for (int i = 0; i < programs.size(); i++) {
+            int status;
+            try {
+                status = results.get(i).get();
+            } catch (ExecutionException | InterruptedException error) {
+                status = 1;
+            }
+            System.out.println(programs.get(i).getFileName() + ": " + status);
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+    private static int runProgram(Path program) throws IOException {
+        String name = program.getFileName().toString();
+        String base = name.substring(0, name.length() - ".code".length());
+        Path in = program.resolveSibling(base + ".in");
 
-        // Stop if there was a syntax error.
-        if (hadError) return;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(errors, true, Charset.defaultCharset());
+        Output out = Output.channel(program.resolveSibling(base + ".out"));
+        Input input = Files.isRegularFile(in) ? Input.mapped(in) : Input.stream(InputStream.nullInputStream());
+        Session session = new Session(options, new Reporter(err), out, input);
 
-        interpreter.interpret(statements);
+        int status;
+        try {
+            session.runFile(program);
+            status = session.status();
+        } catch (RuntimeException | StackOverflowError error) {
+            // What would have ended a single run ends only this program.
+            error.printStackTrace(err);
+            status = 1;
+        } finally {
+            out.close();
+        }
+        Files.write(program.resolveSibling(base + ".err"), errors.toByteArray());
+        return status;
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
-    }
+    // DISPLAY goes to stdout unless a file is given. By default the buffer is
+    // flushed before every SCAN so prompts are visible; "exit" holds all
+    // output until the end and a number flushes every that many bytes too.
+    private static boolean setUpOutput(String flush, String file, boolean mapped) throws IOException {
+        int flushEvery = Output.DEFAULT_CAPACITY;
+        if (flush == null || (file != null && file.isEmpty())) return false;
+        if (!flush.equals("scan") && !flush.equals("exit")) {
+            try {
+                flushEvery = Integer.parseInt(flush);
+            } catch (NumberFormatException error) {
+                return false;
+            }
+            if (flushEvery <= 0) return false;
+        }
+
+        if (file == null) output = Output.stream(System.out);
+        else if (mapped) output = Output.mapped(Paths.get(file));
+        else output = Output.channel(Paths.get(file));
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-                "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
+        output.flushEvery(flushEvery).flushOnScan(!flush.equals("exit"));
+        return true;
     }
 
-    private static void report(int line, String where,
-                               String message) {
-        System.err.println(
-                "[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    private static void compileFile(String path, String output) throws IOException {
+        Path source = Paths.get(path);
+        String fileName = source.getFileName().toString();
+        String baseName = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+        if (output == null) output = baseName + ".jar";
+
+        // The prefix keeps a program named String.code or System.code from
+        // shadowing the java.lang class its generated code relies on.
+        String className = "Code_" + baseName.replaceAll("[^A-Za-z0-9_]", "_");
+
+        Reporter reporter = new Reporter(System.err);
+        byte[] bytes = Files.readAllBytes(source);
+        Scanner scanner = new Scanner(new String(bytes, Charset.defaultCharset()), new SymbolTable(), reporter);
+        Parser parser = new Parser(scanner.scanBuffer(), reporter);
+        List<Stmt> statements = parser.parse();
+        if (reporter.hadError) System.exit(65);
+
+        Resolver resolver = new Resolver(reporter);
+        resolver.resolve(statements);
+        if (reporter.hadError) System.exit(65);
+
+        statements = new TypeChecker(reporter).check(statements);
+        if (reporter.hadError) System.exit(65);
+
+        statements = new Optimizer(reporter).optimize(statements);
+        JvmCompiler compiler = new JvmCompiler(className);
+        String java = compiler.translate(statements, resolver.globalCount());
+
+        compiler.compile(java, Paths.get(output));
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    private static void runPrompt(Session session) throws IOException {
+        InputStreamReader input = new InputStreamReader(System.in);
+        BufferedReader reader = new BufferedReader(input);
+
+        for (;;) {
+            System.out.print("> ");
+            String line = reader.readLine();
+            if (line == null) break;
+            session.run(line);
+            session.reporter().hadError = false;
         }
     }
 }
@@ -0,0 +1,58 @@
+package code;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+// The entry point for running CODE from other Java code. A source is
+// scanned, parsed, resolved, checked and optimized once; the result can
+// then be run any number of times, from any number of threads.
+public final class CodeEngine {
+    private CodeEngine() {}
+
+    public static CompiledProgram compile(String source) {
+        return compile(source, "<source>");
+    }
+
+    // The same, naming the program in Flight Recorder events.
+    public static CompiledProgram compile(String source, String name) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Reporter reporter = new Reporter(new PrintStream(errors, true, Charset.defaultCharset()));
+
+        Scanner scanner = new Scanner(source, new SymbolTable(), reporter);
+        List<Stmt> statements;
+        try {
+            statements = Events.parse(name, Events.scan(name, scanner), reporter);
+        } catch (RuntimeException error) {
+            // The Parser can give up on a broken program after reporting it.
+            if (reporter.hadError) throw failure(errors);
+            throw error;
+        }
+        Events.Compile compile = new Events.Compile();
+        compile.begin();
+        if (!reporter.hadError) new Resolver(reporter).resolve(statements);
+        if (!reporter.hadError) statements = new TypeChecker(reporter).check(statements);
+        if (reporter.hadError) throw failure(errors);
+        statements = new Optimizer(reporter).optimize(statements);
+        compile.end();
+        if (compile.shouldCommit()) {
+            compile.program = name;
+            compile.nodes = new NodeCounter().count(statements);
+            compile.commit();
+        }
+
+        return new CompiledProgram(name, statements);
+    }
+
+    // Publishes the counters of every program run in this JVM through the
+    // platform MBean server, as code:type=Metrics; see MetricsMXBean.
+    // Calling it again does nothing.
+    public static void publishMetrics() {
+        Metrics.register();
+    }
+
+    static CodeException failure(ByteArrayOutputStream errors) {
+        return new CodeException(errors.toString(Charset.defaultCharset()).strip());
+    }
+}
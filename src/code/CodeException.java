@@ -0,0 +1,12 @@
+package code;
+
+// A program that failed to compile, or stopped on a runtime error, seen
+// from outside the interpreter. The message is what the command line
+// would have printed to stderr.
+public class CodeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    CodeException(String message) {
+        super(message);
+    }
+}
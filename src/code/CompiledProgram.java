@@ -0,0 +1,51 @@
+package code;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A checked and optimized program, ready to run. Each run gets its own
+// Interpreter, globals, input and output, so runs never share anything
+// but the tree. The tree is not changed once compiled; the only state in
+// it is the operand-type cache of SpecializingExpr nodes, which every path
+// re-checks, so a run on another thread sees at worst a slower path.
+public final class CompiledProgram {
+    private final String name;
+    private final List<Stmt> statements;
+
+    CompiledProgram(String name, List<Stmt> statements) {
+        this.name = name;
+        this.statements = Collections.unmodifiableList(new ArrayList<>(statements));
+    }
+
+    // SCAN reads from in and DISPLAY writes to out, which is flushed but
+    // left open. Throws a CodeException if the program stops on a runtime
+    // error; what it displayed before that has been written.
+    public void run(InputStream in, OutputStream out) {
+        run(in, out, Limits.NONE);
+    }
+
+    // The same, stopping the program with a CodeException when it goes
+    // over any of the limits.
+    public void run(InputStream in, OutputStream out, Limits limits) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Reporter reporter = new Reporter(new PrintStream(errors, true, Charset.defaultCharset()));
+        Output output = Output.stream(out);
+
+        new Interpreter(reporter, output, Input.stream(in), limits).interpret(name, statements);
+        if (reporter.hadRuntimeError) throw CodeEngine.failure(errors);
+    }
+
+    // The same, with the input given as text and the output returned as text.
+    public String run(String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        run(new ByteArrayInputStream(input.getBytes(Charset.defaultCharset())), out);
+        return out.toString(Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,448 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static code.OpCode.*;
+
+// Lowers checked statements to bytecode for the VM. Every variable gets a
+// fixed index in one flat frame: a block's slots start right after those of
+// the block that encloses it, so sibling blocks share the same indexes.
+// The TypeChecker's types pick the opcode for each operator, so INT, FLOAT
+// and BOOL values are never boxed unless DISPLAY, '&' or a mixed '=='
+// needs them as Objects.
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final String NUMBERS = "Operands must be numbers.";
+    private static final String BOOLS = "Operands must be of type BOOL.";
+
+    private final Chunk chunk = new Chunk();
+    private final List<Integer> bases = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+    private int stackDepth = 0;
+
+    Chunk compile(List<Stmt> statements, int globals) {
+        beginScope(0, globals);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        endScope();
+
+        emit(RETURN);
+        return chunk;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope(int base, int size) {
+        bases.add(base);
+        sizes.add(size);
+        chunk.frameSize = Math.max(chunk.frameSize, base + size);
+    }
+
+    // A nested scope, stacked on top of the innermost one.
+    private void beginScope(TokenType[] layout) {
+        int top = bases.size() - 1;
+        beginScope(bases.get(top) + sizes.get(top), layout.length);
+    }
+
+    private void endScope() {
+        bases.remove(bases.size() - 1);
+        sizes.remove(sizes.size() - 1);
+    }
+
+    private int frameSlot(int depth, int slot) {
+        return bases.get(bases.size() - 1 - depth) + slot;
+    }
+
+    private void emit(int op) {
+        switch (op) {
+            case CONSTANT, NIL, INT, FLOAT, TRUE, FALSE, GET_LOCAL, GET_VALUE, GET_CHECKED -> stackDepth++;
+            case POP, DEFINE_LOCAL, DEFINE_VALUE, PRINT, POP_JUMP_IF_FALSE, EQUAL, NOT_EQUAL,
+                 ADD_INT, SUBTRACT_INT, MULTIPLY_INT, DIVIDE_INT, MODULO_INT,
+                 EQUAL_INT, NOT_EQUAL_INT, GREATER_INT, GREATER_EQUAL_INT, LESS_INT, LESS_EQUAL_INT,
+                 ADD_FLOAT, SUBTRACT_FLOAT, MULTIPLY_FLOAT, DIVIDE_FLOAT, MODULO_FLOAT,
+                 EQUAL_FLOAT, NOT_EQUAL_FLOAT, GREATER_FLOAT, GREATER_EQUAL_FLOAT, LESS_FLOAT, LESS_EQUAL_FLOAT
+                    -> stackDepth--;
+            case JUMP_UNLESS_EQUAL_INT, JUMP_UNLESS_NOT_EQUAL_INT, JUMP_UNLESS_GREATER_INT,
+                 JUMP_UNLESS_GREATER_EQUAL_INT, JUMP_UNLESS_LESS_INT, JUMP_UNLESS_LESS_EQUAL_INT
+                    -> stackDepth -= 2;
+        }
+        chunk.stackSize = Math.max(chunk.stackSize, stackDepth);
+        chunk.write(op);
+    }
+
+    private void emit(int op, int operand) {
+        emit(op);
+        chunk.write(operand);
+    }
+
+    private int emitJump(int op) {
+        emit(op);
+        return chunk.write(0);
+    }
+
+    private void patchJump(int operand) {
+        // Offsets are relative to the instruction that follows the operand.
+        chunk.patch(operand, chunk.count() - operand - 1);
+    }
+
+    private void patchJumps(List<Integer> operands) {
+        for (int operand : operands) patchJump(operand);
+    }
+
+    // Compiles a condition as jumps taken when it is false, returning
+    // their operands to patch. An INT comparison tests and jumps in one
+    // instruction, and AND chains its operands' jumps, so a loop condition
+    // like "i < n AND i % 2 == 0" never materializes a BOOL.
+    private List<Integer> jumpUnless(Expr condition) {
+        return jumpUnless(condition, null);
+    }
+
+    // and is the AND that condition is an operand of, if any, for the error
+    // on a NIL operand.
+    private List<Integer> jumpUnless(Expr condition, Token and) {
+        if (condition instanceof TypedExpr.BoolAnd node) {
+            List<Integer> jumps = jumpUnless(node.left, node.operator);
+            jumps.addAll(jumpUnless(node.right, node.operator));
+            return jumps;
+        }
+
+        List<Integer> jumps = new ArrayList<>();
+        if (condition instanceof TypedExpr.Comparison comparison && comparison.left.type == TokenType.INT) {
+            compileOperands(comparison);
+            switch (comparison.operator.type) {
+                case EQUAL_EQUAL -> jumps.add(emitJump(JUMP_UNLESS_EQUAL_INT));
+                case LESS_GREATER -> jumps.add(emitJump(JUMP_UNLESS_NOT_EQUAL_INT));
+                case GREATER -> jumps.add(emitJump(JUMP_UNLESS_GREATER_INT));
+                case GREATER_EQUAL -> jumps.add(emitJump(JUMP_UNLESS_GREATER_EQUAL_INT));
+                case LESS -> jumps.add(emitJump(JUMP_UNLESS_LESS_INT));
+                default -> jumps.add(emitJump(JUMP_UNLESS_LESS_EQUAL_INT));
+            }
+            return jumps;
+        }
+
+        if (and != null) {
+            compileOperand(condition, and, BOOLS);
+        } else {
+            compileOperand(condition, null, "Condition must be of type BOOL.");
+        }
+        jumps.add(emitJump(POP_JUMP_IF_FALSE));
+        return jumps;
+    }
+
+    // Compiles an operand that cannot be NIL. Reading a variable declared
+    // without a value there fails with message at token (at the variable
+    // itself if token is null), as the operation on NIL always has.
+    private void compileOperand(Expr operand, Token token, String message) {
+        int slot;
+        if (operand instanceof Expr.Variable variable && unboxed(variable.type)) {
+            slot = frameSlot(variable.depth, variable.slot);
+            if (token == null) token = variable.name;
+        } else if (operand instanceof Expr.Assign assign && unboxed(assign.type)) {
+            compile(assign.value);
+            slot = frameSlot(assign.depth, assign.slot);
+            emit(DEFINE_VALUE, slot);
+            if (token == null) token = assign.name;
+        } else {
+            compile(operand);
+            return;
+        }
+        emit(GET_CHECKED, slot);
+        chunk.write(constant(token));
+        chunk.write(constant(message));
+    }
+
+    // The operands of an INT, FLOAT or BOOL operator: '==' and '<>'
+    // compare a NIL, every other operator fails on it.
+    private void compileOperands(Expr.Binary expr) {
+        TokenType operator = expr.operator.type;
+        if (operator == TokenType.EQUAL_EQUAL || operator == TokenType.LESS_GREATER) {
+            compile(expr.left);
+            compile(expr.right);
+        } else {
+            compileOperand(expr.left, expr.operator, NUMBERS);
+            compileOperand(expr.right, expr.operator, NUMBERS);
+        }
+    }
+
+    // The INT value of a literal right operand, which can go into the code.
+    private static Integer intLiteral(Expr expr) {
+        return expr instanceof Expr.Literal literal && literal.value instanceof Integer value ? value : null;
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(LOOP);
+        int operand = chunk.count();
+        chunk.write(operand + 1 - loopStart);
+    }
+
+    private int constant(Object value) {
+        return chunk.addConstant(value);
+    }
+
+    // INT, FLOAT and BOOL values never leave the long half of the stack
+    // and frame unless something needs them as Objects.
+    static boolean unboxed(TokenType type) {
+        return type == TokenType.INT || type == TokenType.FLOAT || type == TokenType.BOOL;
+    }
+
+    // Compiles expr and moves its value to the Object half if it is unboxed.
+    private void compileBoxed(Expr expr) {
+        compile(expr);
+        if (expr.type == TokenType.INT) emit(BOX_INT);
+        else if (expr.type == TokenType.FLOAT) emit(BOX_FLOAT);
+        else if (expr.type == TokenType.BOOL) emit(BOX_BOOL);
+    }
+
+    private void define(TokenType type, int slot) {
+        emit(unboxed(type) ? DEFINE_VALUE : DEFINE_LOCAL, slot);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.layout != null) beginScope(stmt.layout);
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        if (stmt.layout != null) endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        // A bare assignment does not need its value left on the stack.
+        if (stmt.expression instanceof Expr.Assign assign) {
+            // "i = i + 1" and "i = i - 1" update the slot in place.
+            if (assign.value instanceof TypedExpr.IntAdd || assign.value instanceof TypedExpr.IntSubtract) {
+                Expr.Binary step = (Expr.Binary) assign.value;
+                Integer amount = intLiteral(step.right);
+                if (amount != null && step.left instanceof Expr.Variable variable
+                        && variable.depth == assign.depth && variable.slot == assign.slot) {
+                    emit(INCREMENT, frameSlot(assign.depth, assign.slot));
+                    chunk.write(step instanceof TypedExpr.IntAdd ? amount : -amount);
+                    chunk.write(constant(step.operator));
+                    return null;
+                }
+            }
+            compile(assign.value);
+            define(assign.type, frameSlot(assign.depth, assign.slot));
+            return null;
+        }
+
+        compile(stmt.expression);
+        emit(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        if (stmt.layout != null) beginScope(stmt.layout);
+        if (stmt.initializer != null) compile(stmt.initializer);
+        int loopStart = chunk.count();
+        List<Integer> exits = jumpUnless(stmt.condition);
+        compile(stmt.body);
+        if (stmt.increment != null) compile(new Stmt.Expression(stmt.increment));
+        emitLoop(loopStart);
+        patchJumps(exits);
+        if (stmt.layout != null) endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        List<Integer> thenJumps = jumpUnless(stmt.condition);
+        compile(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            patchJumps(thenJumps);
+            return null;
+        }
+
+        int elseJump = emitJump(JUMP);
+        patchJumps(thenJumps);
+        compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compileBoxed(stmt.expression);
+        emit(PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitScanStmt(Stmt.Scan stmt) {
+        emit(SCAN, constant(stmt.variables.get(0).name));
+        chunk.write(stmt.variables.size());
+        for (Expr.Variable variable : stmt.variables) {
+            chunk.write(frameSlot(variable.depth, variable.slot));
+            chunk.write(variable.type.ordinal());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else if (unboxed(stmt.type)) {
+            emitBits(VM.NIL_BITS);
+        } else {
+            emit(NIL);
+        }
+
+        define(stmt.type, frameSlot(0, stmt.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = chunk.count();
+        List<Integer> exits = jumpUnless(stmt.condition);
+        compile(stmt.body);
+        emitLoop(loopStart);
+        patchJumps(exits);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        emit(unboxed(expr.type) ? SET_VALUE : SET_LOCAL, frameSlot(expr.depth, expr.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        if (expr instanceof SpecializingExpr.Concatenation chain) {
+            for (Expr operand : chain.operands) compileBoxed(operand);
+            emit(CONCAT, chain.operands.length);
+            stackDepth -= chain.operands.length - 1;
+            return null;
+        }
+
+        TokenType operator = expr.operator.type;
+        TokenType operands = expr.left.type == expr.right.type ? expr.left.type : null;
+
+        if ((operator == TokenType.EQUAL_EQUAL || operator == TokenType.LESS_GREATER) && !unboxed(operands)) {
+            // Any two values can be compared for equality.
+            compileBoxed(expr.left);
+            compileBoxed(expr.right);
+            emit(operator == TokenType.EQUAL_EQUAL ? EQUAL : NOT_EQUAL);
+            return null;
+        }
+
+        Integer constant = operands == TokenType.INT ? intLiteral(expr.right) : null;
+        if (constant != null && isArithmetic(operator)) {
+            compileOperand(expr.left, expr.operator, NUMBERS);
+            switch (operator) {
+                case MINUS -> emit(SUBTRACT_INT_CONSTANT, constant);
+                case PLUS -> emit(ADD_INT_CONSTANT, constant);
+                case SLASH -> emit(DIVIDE_INT_CONSTANT, constant);
+                case STAR -> emit(MULTIPLY_INT_CONSTANT, constant);
+                default -> emit(MODULO_INT_CONSTANT, constant);
+            }
+            return null;
+        }
+
+        compileOperands(expr);
+        boolean floats = operands == TokenType.FLOAT;
+        switch (operator) {
+            case EQUAL_EQUAL: emit(floats ? EQUAL_FLOAT : EQUAL_INT); break;
+            case LESS_GREATER: emit(floats ? NOT_EQUAL_FLOAT : NOT_EQUAL_INT); break;
+            case GREATER: emit(floats ? GREATER_FLOAT : GREATER_INT); break;
+            case GREATER_EQUAL: emit(floats ? GREATER_EQUAL_FLOAT : GREATER_EQUAL_INT); break;
+            case LESS: emit(floats ? LESS_FLOAT : LESS_INT); break;
+            case LESS_EQUAL: emit(floats ? LESS_EQUAL_FLOAT : LESS_EQUAL_INT); break;
+            case MINUS: emit(floats ? SUBTRACT_FLOAT : SUBTRACT_INT); break;
+            case PLUS: emit(floats ? ADD_FLOAT : ADD_INT); break;
+            case SLASH: emit(floats ? DIVIDE_FLOAT : DIVIDE_INT); break;
+            case STAR: emit(floats ? MULTIPLY_FLOAT : MULTIPLY_INT); break;
+            case PERCENT: emit(floats ? MODULO_FLOAT : MODULO_INT); break;
+        }
+        return null;
+    }
+
+    private static boolean isArithmetic(TokenType operator) {
+        return operator == TokenType.MINUS || operator == TokenType.PLUS || operator == TokenType.SLASH
+                || operator == TokenType.STAR || operator == TokenType.PERCENT;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(NIL);
+        } else if (expr.value instanceof Boolean value) {
+            emit(value ? TRUE : FALSE);
+        } else if (expr.value instanceof Integer value) {
+            emit(INT, value);
+        } else if (expr.value instanceof Double value) {
+            emitFloat(value);
+        } else {
+            emit(CONSTANT, constant(expr.value));
+        }
+        return null;
+    }
+
+    // A FLOAT goes into the code itself, as the two halves of its bits.
+    private void emitFloat(double value) {
+        emitBits(Double.doubleToRawLongBits(value));
+    }
+
+    private void emitBits(long bits) {
+        emit(FLOAT);
+        chunk.write((int) (bits >>> 32));
+        chunk.write((int) bits);
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compileOperand(expr.left, expr.operator, BOOLS);
+        int endJump;
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(JUMP_IF_FALSE);
+            endJump = emitJump(JUMP);
+            patchJump(elseJump);
+        } else {
+            endJump = emitJump(JUMP_IF_FALSE);
+        }
+        emit(POP);
+        compileOperand(expr.right, expr.operator, BOOLS);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        switch (expr.operator.type) {
+            case NOT:
+                compileOperand(expr.right, expr.operator, "Operand must be of type BOOL.");
+                emit(NOT);
+                break;
+            case MINUS:
+                compileOperand(expr.right, expr.operator, "Operand must be a number.");
+                emit(expr.right.type == TokenType.FLOAT ? NEGATE_FLOAT : NEGATE_INT);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        emit(unboxed(expr.type) ? GET_VALUE : GET_LOCAL, frameSlot(expr.depth, expr.slot));
+        return null;
+    }
+}
@@ -1,60 +1,167 @@
 package code;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+// Each variable lives in the array for its declared type, at its resolved
+// slot, so reading or writing an INT, FLOAT, BOOL or CHAR never boxes.
+// A typed variable declared without a value is NIL until its first store;
+// the unset bits say which ones are, and exist only once one is declared.
 class Environment {
+    // Thrown by the unboxed getters on a NIL variable, for the caller to
+    // turn into the error or result the boxed value would have given.
+    static final class Unset extends RuntimeException {
+        private Unset() {
+            super(null, null, false, false);
+        }
+    }
+
+    static final Unset UNSET = new Unset();
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
-    private final Map<String, TokenType> types = new HashMap<>();
+    private TokenType[] types;
+    private boolean[] unset;
+    private int[] ints;
+    private double[] doubles;
+    private boolean[] booleans;
+    private char[] chars;
+    private Object[] values;
 
     Environment() {
-        enclosing = null;
+        this(null, new TokenType[8]);
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, TokenType[] layout) {
         this.enclosing = enclosing;
+        this.types = layout;
+        allocate(layout);
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+    private void allocate(TokenType[] layout) {
+        int size = layout.length;
+        for (TokenType type : layout) {
+            if (type == null) continue;
+            switch (type) {
+                case INT: if (ints == null) ints = new int[size]; break;
+                case FLOAT: if (doubles == null) doubles = new double[size]; break;
+                case BOOL: if (booleans == null) booleans = new boolean[size]; break;
+                case CHAR: if (chars == null) chars = new char[size]; break;
+                default: if (values == null) values = new Object[size]; break;
+            }
         }
+    }
 
-        if (enclosing != null) return enclosing.get(name);
+    int getInt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        if (environment.unset != null && environment.unset[slot]) throw UNSET;
+        return environment.ints[slot];
+    }
 
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
+    double getDouble(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        if (environment.unset != null && environment.unset[slot]) throw UNSET;
+        return environment.doubles[slot];
     }
 
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
+    boolean getBoolean(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        if (environment.unset != null && environment.unset[slot]) throw UNSET;
+        return environment.booleans[slot];
+    }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    void setInt(int distance, int slot, int value) {
+        Environment environment = ancestor(distance);
+        environment.ints[slot] = value;
+        if (environment.unset != null) environment.unset[slot] = false;
+    }
+
+    void setDouble(int distance, int slot, double value) {
+        Environment environment = ancestor(distance);
+        environment.doubles[slot] = value;
+        if (environment.unset != null) environment.unset[slot] = false;
+    }
+
+    void setBoolean(int distance, int slot, boolean value) {
+        Environment environment = ancestor(distance);
+        environment.booleans[slot] = value;
+        if (environment.unset != null) environment.unset[slot] = false;
+    }
+
+    // Makes the variable NIL, as a declaration without a value does.
+    void unsetAt(int distance, int slot) {
+        ancestor(distance).clear(slot);
+    }
+
+    Object getAt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        if (environment.unset != null && environment.unset[slot]) return null;
+        switch (environment.types[slot]) {
+            case INT: return environment.ints[slot];
+            case FLOAT: return environment.doubles[slot];
+            case BOOL: return environment.booleans[slot];
+            case CHAR: return environment.chars[slot];
+            default: return environment.values[slot];
         }
+    }
 
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
+    // The value must already match the variable's type; null only for a
+    // STRING or to copy a NIL.
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).store(slot, value);
     }
 
-    void define(String name, Object value, TokenType type) {
-        values.put(name, value);
-        types.put(name, type);
+    TokenType getTypeAt(int distance, int slot) {
+        return ancestor(distance).types[slot];
     }
 
-    TokenType getType(String name) {
-        if (types.containsKey(name)) {
-            return types.get(name);
+    void define(int slot, TokenType type) {
+        // Only the global scope grows; block layouts are known after resolving.
+        if (slot >= types.length) {
+            int capacity = Math.max(slot + 1, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            if (ints != null) ints = Arrays.copyOf(ints, capacity);
+            if (doubles != null) doubles = Arrays.copyOf(doubles, capacity);
+            if (booleans != null) booleans = Arrays.copyOf(booleans, capacity);
+            if (chars != null) chars = Arrays.copyOf(chars, capacity);
+            if (values != null) values = Arrays.copyOf(values, capacity);
+            if (unset != null) unset = Arrays.copyOf(unset, capacity);
         }
+        if (types[slot] != type) {
+            types[slot] = type;
+            allocate(types);
+        }
+    }
 
-        if (enclosing != null) return enclosing.getType(name);
+    private void store(int slot, Object value) {
+        if (value == null) {
+            clear(slot);
+            return;
+        }
+        if (unset != null) unset[slot] = false;
+        switch (types[slot]) {
+            case INT: ints[slot] = (int) value; break;
+            case FLOAT: doubles[slot] = (double) value; break;
+            case BOOL: booleans[slot] = (boolean) value; break;
+            case CHAR: chars[slot] = (char) value; break;
+            default: values[slot] = value; break;
+        }
+    }
+
+    private void clear(int slot) {
+        switch (types[slot]) {
+            case INT: case FLOAT: case BOOL: case CHAR:
+                if (unset == null) unset = new boolean[types.length];
+                unset[slot] = true;
+                break;
+            default: values[slot] = null; break;
+        }
+    }
+
+    private Environment ancestor(int distance) {
+        Environment environment = this;
+        for (int i = 0; i < distance; i++) {
+            environment = environment.enclosing;
+        }
 
-        throw new RuntimeError(new Token(TokenType.IDENTIFIER, name, null, 0),
-                "Undefined variable '" + name + "'.");
+        return environment;
     }
 }
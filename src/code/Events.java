@@ -0,0 +1,137 @@
+package code;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+import java.util.List;
+
+// Flight Recorder events for each phase of a run, so a recording shows a
+// slow program's scan, parse, compile and execute times next to the GC
+// and allocation events of the same moments. Every event names the
+// program it belongs to: the script's path, "<prompt>", or the name given
+// to CodeEngine.compile. None of them costs more than an unused object
+// unless a recording enables it; node counts, which walk the tree, are
+// only taken for an event that will be committed.
+class Events {
+    @Name("code.Scan")
+    @Label("Scan")
+    @Description("Turning a program's source into tokens.")
+    @Category({"CODE", "Phases"})
+    @StackTrace(false)
+    static class Scan extends Event {
+        @Label("Program")
+        String program;
+
+        @Label("Tokens")
+        int tokens;
+    }
+
+    @Name("code.Parse")
+    @Label("Parse")
+    @Description("Building the tree of a program; when tokens are streamed this includes scanning them.")
+    @Category({"CODE", "Phases"})
+    @StackTrace(false)
+    static class Parse extends Event {
+        @Label("Program")
+        String program;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Nodes")
+        int nodes;
+    }
+
+    @Name("code.Compile")
+    @Label("Compile")
+    @Description("Resolving, type checking and optimizing a parsed program.")
+    @Category({"CODE", "Phases"})
+    @StackTrace(false)
+    static class Compile extends Event {
+        @Label("Program")
+        String program;
+
+        @Label("Nodes")
+        @Description("Nodes left after optimizing.")
+        int nodes;
+    }
+
+    @Name("code.Execute")
+    @Label("Execute")
+    @Description("Running a compiled program in the Interpreter.")
+    @Category({"CODE", "Phases"})
+    @StackTrace(false)
+    static class Execute extends Event {
+        @Label("Program")
+        String program;
+
+        @Label("Statements")
+        long statements;
+
+        @Label("Loop Iterations")
+        long iterations;
+
+        @Label("Output")
+        @DataAmount
+        long outputBytes;
+
+        @Label("Runtime Error")
+        boolean failed;
+    }
+
+    @Name("code.Throughput")
+    @Label("Interpreter Throughput")
+    @Description("Work done by every Interpreter in this JVM since the last event.")
+    @Category({"CODE", "Throughput"})
+    @Period("1 s")
+    @StackTrace(false)
+    static class Throughput extends Event {
+        @Label("Running Programs")
+        long running;
+
+        @Label("Finished Programs")
+        long finished;
+
+        @Label("Loop Iterations")
+        long iterations;
+
+        @Label("Output")
+        @DataAmount
+        long outputBytes;
+    }
+
+    private Events() {}
+
+    static TokenBuffer scan(String program, Scanner scanner) {
+        Scan event = new Scan();
+        event.begin();
+        TokenBuffer tokens = scanner.scanBuffer();
+        event.end();
+        if (event.shouldCommit()) {
+            event.program = program;
+            event.tokens = tokens.size();
+            event.commit();
+        }
+        return tokens;
+    }
+
+    static List<Stmt> parse(String program, TokenStream tokens, Reporter reporter) {
+        Parse event = new Parse();
+        event.begin();
+        List<Stmt> statements = new Parser(tokens, reporter).parse();
+        event.end();
+        if (event.shouldCommit()) {
+            event.program = program;
+            event.tokens = tokens.read();
+            event.nodes = new NodeCounter().count(statements);
+            event.commit();
+        }
+        return statements;
+    }
+}
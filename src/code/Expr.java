@@ -15,6 +15,7 @@ abstract class Expr {
     static class Assign extends Expr {
         Assign(Token name, Expr value) {
             this.name = name;
+            this.symbol = name.symbol;
             this.value = value;
         }
 
@@ -24,7 +25,12 @@ abstract class Expr {
         }
 
         final Token name;
+        final int symbol;
         final Expr value;
+
+        // Filled in by the Resolver.
+        int depth = -1;
+        int slot = -1;
     }
     static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
@@ -99,6 +105,7 @@ abstract class Expr {
     static class Variable extends Expr {
         Variable(Token name) {
             this.name = name;
+            this.symbol = name.symbol;
         }
 
         @Override
@@ -107,7 +114,16 @@ abstract class Expr {
         }
 
         final Token name;
+        final int symbol;
+
+        // Filled in by the Resolver.
+        int depth = -1;
+        int slot = -1;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
+
+    // Static type filled in by the Resolver for variables and by the
+    // TypeChecker for everything else; null if the expression is ill-typed.
+    TokenType type;
 }
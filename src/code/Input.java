@@ -0,0 +1,262 @@
+package code;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+// Where SCAN reads. One reader lives as long as the program, so input that
+// was read ahead is never lost between SCANs. Fields are parsed straight
+// out of the byte buffer into the target type; only STRING fields, and
+// FLOATs too long or too precise for the fast path, build a String.
+class Input {
+    private static final int CAPACITY = 1 << 16;
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    // Exact powers of ten; dividing by one of these rounds correctly.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private ByteBuffer buffer;
+
+    // The current line is [field, lineEnd); field moves past each value read.
+    private int field;
+    private int lineEnd;
+    // The last line ended in a '\r' that was the last byte read, so its
+    // '\n', if any, has yet to arrive and must not start an empty line.
+    private boolean pendingReturn;
+
+    private Input(InputStream in, ByteBuffer buffer) {
+        this.in = in;
+        this.buffer = buffer;
+    }
+
+    static Input stream(InputStream in) {
+        // Allocated on first read; most programs never SCAN.
+        return new Input(in, null);
+    }
+
+    // The whole file is the input; nothing is ever copied in.
+    static Input mapped(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return new Input(null, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Moves to the next line and returns how many comma-separated fields it
+    // has, counted the way String.split(",") does: trailing empty fields are
+    // dropped, but an empty line is one empty field.
+    int nextLine(Token first) {
+        if (buffer == null) buffer = ByteBuffer.allocate(CAPACITY).limit(0);
+
+        int end = findLineEnd();
+        if (end < 0) throw new RuntimeError(first, "No more input to read.");
+
+        field = buffer.position();
+        lineEnd = end;
+        buffer.position(skipNewline(end));
+
+        int last = lineEnd;
+        while (last > field && buffer.get(last - 1) == ',') last--;
+        if (last == field) return lineEnd == field ? 1 : 0;
+
+        int count = 1;
+        for (int i = field; i < last; i++) {
+            if (buffer.get(i) == ',') count++;
+        }
+        return count;
+    }
+
+    int nextInt(Token variable) {
+        int end = fieldEnd();
+        int i = field;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i++) == '-';
+        }
+        if (i == end) throw invalid(variable, TokenType.INT);
+
+        // Accumulated negatively so Integer.MIN_VALUE fits.
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) throw invalid(variable, TokenType.INT);
+            value = value * 10 - digit;
+            if (value < Integer.MIN_VALUE) throw invalid(variable, TokenType.INT);
+        }
+        if (!negative && value == Integer.MIN_VALUE) throw invalid(variable, TokenType.INT);
+
+        advance(end);
+        return (int) (negative ? value : -value);
+    }
+
+    double nextDouble(Token variable) {
+        int end = fieldEnd();
+        int i = field;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i++) == '-';
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9' && digits < 15) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) digits++;
+                if (decimals >= 0) decimals++;
+            } else {
+                break;
+            }
+        }
+
+        // Exponents, more than 15 significant digits and anything invalid
+        // go through the JDK so the result and the error match it exactly.
+        if (i < end || digits + Math.max(decimals, 0) == 0 || decimals >= POWERS_OF_TEN.length) {
+            String text = new String(bytes(field, end), StandardCharsets.ISO_8859_1);
+            advance(end);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException error) {
+                throw invalid(variable, TokenType.FLOAT);
+            }
+        }
+
+        advance(end);
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    boolean nextBoolean() {
+        int end = fieldEnd();
+        boolean value = end - field == 4
+                && (buffer.get(field) | 0x20) == 't'
+                && (buffer.get(field + 1) | 0x20) == 'r'
+                && (buffer.get(field + 2) | 0x20) == 'u'
+                && (buffer.get(field + 3) | 0x20) == 'e';
+        advance(end);
+        return value;
+    }
+
+    char nextChar(Token variable) {
+        int end = fieldEnd();
+        if (end == field) throw invalid(variable, TokenType.CHAR);
+
+        byte first = buffer.get(field);
+        char value = first >= 0 ? (char) first : new String(bytes(field, end), CHARSET).charAt(0);
+        advance(end);
+        return value;
+    }
+
+    String nextString() {
+        int end = fieldEnd();
+        String value = new String(bytes(field, end), CHARSET);
+        advance(end);
+        return value;
+    }
+
+    // Boxed, for callers that keep values as objects.
+    Object next(Token variable, TokenType type) {
+        switch (type) {
+            case INT: return nextInt(variable);
+            case FLOAT: return nextDouble(variable);
+            case BOOL: return nextBoolean();
+            case CHAR: return nextChar(variable);
+            case STRING: return nextString();
+            default: throw new RuntimeError(variable, "Unsupported variable type.");
+        }
+    }
+
+    private int fieldEnd() {
+        int end = field;
+        while (end < lineEnd && buffer.get(end) != ',') end++;
+        return end;
+    }
+
+    private void advance(int end) {
+        field = end < lineEnd ? end + 1 : end;
+    }
+
+    private byte[] bytes(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return bytes;
+    }
+
+    private static RuntimeError invalid(Token variable, TokenType type) {
+        return new RuntimeError(variable, "Input value is not a valid " + type + ".");
+    }
+
+    // Index of the '\n' or '\r' that ends the current line, reading more
+    // input as needed; the end of input also ends a non-empty last line.
+    private int findLineEnd() {
+        if (pendingReturn) {
+            pendingReturn = false;
+            if (buffer.position() == buffer.limit()) fill();
+            if (buffer.position() < buffer.limit() && buffer.get(buffer.position()) == '\n') {
+                buffer.position(buffer.position() + 1);
+            }
+        }
+
+        int scanned = buffer.position();
+        for (;;) {
+            for (int i = scanned; i < buffer.limit(); i++) {
+                byte c = buffer.get(i);
+                if (c == '\n' || c == '\r') return i;
+            }
+            scanned = buffer.limit();
+
+            int before = buffer.position();
+            if (!fill()) {
+                return buffer.position() < buffer.limit() ? buffer.limit() : -1;
+            }
+            scanned -= before - buffer.position();
+        }
+    }
+
+    private int skipNewline(int end) {
+        if (end >= buffer.limit()) return end;
+        if (buffer.get(end) == '\r') {
+            // The '\n' of a "\r\n" split across reads is skipped by the
+            // next findLineEnd; waiting for it here could block on a prompt.
+            if (end + 1 == buffer.limit()) pendingReturn = true;
+            else if (buffer.get(end + 1) == '\n') return end + 2;
+            return end + 1;
+        }
+        return end + 1;
+    }
+
+    // Reads whatever is available into the free end of the buffer, first
+    // moving the unread part to the front and growing it for long lines.
+    private boolean fill() {
+        if (in == null) return false;
+
+        if (buffer.position() > 0) {
+            buffer.compact().flip();
+        } else if (buffer.limit() == buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            larger.put(buffer).flip();
+            buffer = larger;
+        }
+
+        try {
+            int count = in.read(buffer.array(), buffer.limit(), buffer.capacity() - buffer.limit());
+            if (count < 0) return false;
+            buffer.limit(buffer.limit() + count);
+            return true;
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+}
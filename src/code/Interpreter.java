@@ -1,18 +1,111 @@
 package code;
 
 import java.util.List;
-import java.util.Scanner;
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+import java.util.concurrent.CancellationException;
 
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+    // Loop iterations between looks at the clock, the step budget and the
+    // thread's interrupt flag.
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final Reporter reporter;
+    private final Output output;
+    private final Input input;
+    private final Limits limits;
+    // Null unless profiling; execute() tests nothing else.
+    private final Profiler profiler;
     private Environment environment = new Environment();
 
-    void interpret(List<Stmt> statements) {
+    // Iterations left before the next safepoint; the only thing a loop
+    // touches on its hot path. granted is what the last refill gave.
+    private int fuel = CHECK_INTERVAL;
+    private int granted = CHECK_INTERVAL;
+    private long iterations = 0;
+    // Counts since they were last added to Metrics. Plain fields: an
+    // Interpreter runs on one thread at a time.
+    private long statements = 0;
+    private long expressions = 0;
+    private long lookups = 0;
+    private long scopes = 0;
+    private long inputValues = 0;
+    // Statements this Interpreter has run, for the Execute event.
+    private long statementsRun = 0;
+    private long stepsLeft;
+    private long outputLeft;
+    private long deadline;
+
+    // Only for evaluating expressions, as the Optimizer does.
+    Interpreter(Reporter reporter, Output output, Input input) {
+        this(reporter, output, input, Limits.NONE);
+    }
+
+    Interpreter(Reporter reporter, Output output, Input input, Limits limits) {
+        this(reporter, output, input, limits, null);
+    }
+
+    Interpreter(Reporter reporter, Output output, Input input, Limits limits, Profiler profiler) {
+        this.reporter = reporter;
+        this.output = output;
+        this.input = input;
+        this.limits = limits;
+        this.profiler = profiler;
+        this.stepsLeft = limits.steps;
+        this.outputLeft = limits.output;
+    }
+
+    // For the Optimizer, which only evaluates operators over literals:
+    // nothing it runs reads input, displays or reports, so no streams.
+    static Interpreter folder() {
+        return new Interpreter(null, null, null);
+    }
+
+    // program names the run in Flight Recorder events.
+    void interpret(String program, List<Stmt> statements) {
+        Events.Execute event = new Events.Execute();
+        event.begin();
+        Metrics.started.increment();
+        long started = System.nanoTime();
+        long iterationsBefore = iterations;
+        long statementsBefore = statementsRun;
+        long bytesBefore = output.bytes();
+
+        if (limits.millis > 0) deadline = System.nanoTime() + limits.millis * 1_000_000;
+        refuel();
+        if (profiler != null) profiler.start(statements);
         try {
             for (Stmt statement : statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Code.runtimeError(error);
+            output.flush();
+            Metrics.error(error.getMessage());
+            reporter.runtimeError(error);
+        } catch (CancellationException error) {
+            Metrics.error(error.getMessage());
+            throw error;
+        } finally {
+            if (profiler != null) profiler.stop();
+            output.flush();
+
+            // The iterations of the allowance in progress; a negative fuel
+            // means a safepoint already charged all of it.
+            long partial = fuel < 0 ? 0 : granted - fuel;
+            iterations += partial;
+            Metrics.iterations.add(partial);
+            Metrics.outputBytes.add(output.bytes() - bytesBefore);
+            publish();
+            Metrics.latency.record(System.nanoTime() - started);
+            Metrics.finished.increment();
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.program = program;
+                event.statements = statementsRun - statementsBefore;
+                event.iterations = iterations - iterationsBefore;
+                event.outputBytes = output.bytes() - bytesBefore;
+                event.failed = reporter.hadRuntimeError;
+                event.commit();
+            }
         }
     }
     @Override
@@ -22,6 +115,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitLogicalExpr(Expr.Logical expr) {
+        if (expr instanceof TypedExpr.BoolLogical node) return apply(node);
+
         Object left = evaluate(expr.left);
 
         if (expr.operator.type == TokenType.OR) {
@@ -35,6 +130,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr instanceof TypedExpr.IntNegate node) return apply(node);
+        if (expr instanceof TypedExpr.FloatNegate node) return apply(node);
+        if (expr instanceof TypedExpr.BoolNot node) return apply(node);
+
         Object right = evaluate(expr.right);
 
         switch (expr.operator.type) {
@@ -63,15 +162,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
+        lookups++;
+        return environment.getAt(expr.depth, expr.slot);
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    static void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double || operand instanceof Integer) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator,
+    static void checkNumberOperands(Token operator,
                                      Object left, Object right) {
         if ((left instanceof Double && right instanceof Integer) || (left instanceof Integer && right instanceof Double)) {
             throw new RuntimeError(operator,
@@ -84,31 +184,23 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private boolean isExistingVar(Token varToken) {
-        Object varObject;
-        try {
-            varObject = environment.get(varToken);
-            return true;
-        } catch (RuntimeError error) {
-            return false;
-        }
-    }
-
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         // if (object == null) return false;
         // if (object instanceof Boolean) return (boolean)object;
         // return true;
         return (boolean)object;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
+        a = Rope.flatten(a);
+        b = Rope.flatten(b);
         if (a == null && b == null) return true;
         if (a == null) return false;
 
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "NIL";
 
         if (object instanceof Double) {
@@ -126,17 +218,263 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return object.toString();
     }
 
+    // Joins lazily; see Rope.
+    static CharSequence concatenate(Object left, Object right) {
+        return Rope.join(text(left), text(right));
+    }
+
+    static CharSequence text(Object value) {
+        if (value instanceof CharSequence text) return text;
+        if (value instanceof Boolean) return value.toString().toUpperCase();
+        return value.toString();
+    }
+
     @Override
     public Object visitGroupingExpr(Expr.Grouping expr) {
         return evaluate(expr.expression);
     }
 
-    private Object evaluate(Expr expr) {
+    Object evaluate(Expr expr) {
+        expressions++;
         return expr.accept(this);
     }
 
+    // The evaluateInt/Double/Boolean paths are only entered for expressions
+    // the TypeChecker proved to have that type, so they need no runtime
+    // checks and never box. Reading a NIL variable throws Environment.Unset,
+    // which the nearest node or assignment turns into what the boxed
+    // operation on NIL did.
+    int evaluateInt(Expr expr) {
+        expressions++;
+        if (expr instanceof TypedExpr.IntBinary node) {
+            return apply(node);
+        }
+        if (expr instanceof Expr.Variable variable) {
+            lookups++;
+            return environment.getInt(variable.depth, variable.slot);
+        }
+        if (expr instanceof Expr.Literal literal) {
+            return (int) literal.value;
+        }
+        if (expr instanceof TypedExpr.IntNegate node) {
+            return apply(node);
+        }
+
+        Expr.Assign assign = (Expr.Assign) expr;
+        assign(assign.depth, assign.slot, assign.type, assign.name, assign.value);
+        return environment.getInt(assign.depth, assign.slot);
+    }
+
+    double evaluateDouble(Expr expr) {
+        expressions++;
+        if (expr instanceof TypedExpr.FloatBinary node) {
+            return apply(node);
+        }
+        if (expr instanceof Expr.Variable variable) {
+            lookups++;
+            return environment.getDouble(variable.depth, variable.slot);
+        }
+        if (expr instanceof Expr.Literal literal) {
+            return (double) literal.value;
+        }
+        if (expr instanceof TypedExpr.FloatNegate node) {
+            return apply(node);
+        }
+
+        Expr.Assign assign = (Expr.Assign) expr;
+        assign(assign.depth, assign.slot, assign.type, assign.name, assign.value);
+        return environment.getDouble(assign.depth, assign.slot);
+    }
+
+    boolean evaluateBoolean(Expr expr) {
+        expressions++;
+        if (expr instanceof TypedExpr.Comparison node) {
+            return apply(node);
+        }
+        if (expr instanceof TypedExpr.BoolLogical node) {
+            return apply(node);
+        }
+        if (expr instanceof Expr.Variable variable) {
+            lookups++;
+            return environment.getBoolean(variable.depth, variable.slot);
+        }
+        if (expr instanceof Expr.Literal literal) {
+            return (boolean) literal.value;
+        }
+        if (expr instanceof TypedExpr.BoolNot node) {
+            return apply(node);
+        }
+        if (expr instanceof SpecializingExpr.Equality node) {
+            return node.evaluate(this);
+        }
+
+        Expr.Assign assign = (Expr.Assign) expr;
+        assign(assign.depth, assign.slot, assign.type, assign.name, assign.value);
+        return environment.getBoolean(assign.depth, assign.slot);
+    }
+
+    // A typed node whose operand turns out to be NIL fails as the boxed
+    // operation would have.
+    private int apply(TypedExpr.IntBinary node) {
+        try {
+            return node.evaluate(this);
+        } catch (Environment.Unset unset) {
+            throw new RuntimeError(node.operator, "Operands must be numbers.");
+        }
+    }
+
+    private double apply(TypedExpr.FloatBinary node) {
+        try {
+            return node.evaluate(this);
+        } catch (Environment.Unset unset) {
+            throw new RuntimeError(node.operator, "Operands must be numbers.");
+        }
+    }
+
+    // Only '<', '<=', '>' and '>=' get here; '==' and '<>' compare NIL.
+    private boolean apply(TypedExpr.Comparison node) {
+        try {
+            return node.evaluate(this);
+        } catch (Environment.Unset unset) {
+            throw new RuntimeError(node.operator, "Operands must be numbers.");
+        }
+    }
+
+    private int apply(TypedExpr.IntNegate node) {
+        try {
+            return node.evaluate(this);
+        } catch (Environment.Unset unset) {
+            throw new RuntimeError(node.operator, "Operand must be a number.");
+        }
+    }
+
+    private double apply(TypedExpr.FloatNegate node) {
+        try {
+            return node.evaluate(this);
+        } catch (Environment.Unset unset) {
+            throw new RuntimeError(node.operator, "Operand must be a number.");
+        }
+    }
+
+    private boolean apply(TypedExpr.BoolLogical node) {
+        try {
+            return node.evaluate(this);
+        } catch (Environment.Unset unset) {
+            throw new RuntimeError(node.operator, "Operands must be of type BOOL.");
+        }
+    }
+
+    private boolean apply(TypedExpr.BoolNot node) {
+        try {
+            return node.evaluate(this);
+        } catch (Environment.Unset unset) {
+            throw new RuntimeError(node.operator, "Operand must be of type BOOL.");
+        }
+    }
+
+    // The typed '==' and '<>': NIL equals only NIL, as isEqual has it.
+    boolean equalInts(Expr left, Expr right) {
+        int value;
+        try {
+            value = evaluateInt(left);
+        } catch (Environment.Unset unset) {
+            return evaluate(right) == null;
+        }
+        try {
+            return value == evaluateInt(right);
+        } catch (Environment.Unset unset) {
+            return false;
+        }
+    }
+
+    boolean equalDoubles(Expr left, Expr right) {
+        double value;
+        try {
+            value = evaluateDouble(left);
+        } catch (Environment.Unset unset) {
+            return evaluate(right) == null;
+        }
+        try {
+            return Double.compare(value, evaluateDouble(right)) == 0;
+        } catch (Environment.Unset unset) {
+            return false;
+        }
+    }
+
+    boolean equalBooleans(Expr left, Expr right) {
+        boolean value;
+        try {
+            value = evaluateBoolean(left);
+        } catch (Environment.Unset unset) {
+            return evaluate(right) == null;
+        }
+        try {
+            return value == evaluateBoolean(right);
+        } catch (Environment.Unset unset) {
+            return false;
+        }
+    }
+
+    private boolean condition(Expr expr) {
+        if (expr.type != TokenType.BOOL) return isTruthy(evaluate(expr));
+        try {
+            return evaluateBoolean(expr);
+        } catch (Environment.Unset unset) {
+            // Only a variable or an assignment lets Unset through.
+            Token name = expr instanceof Expr.Variable variable ? variable.name : ((Expr.Assign) expr).name;
+            throw new RuntimeError(name, "Condition must be of type BOOL.");
+        }
+    }
+
+    private void assign(int distance, int slot, TokenType type, Token name, Expr value) {
+        if (value.type == type) {
+            try {
+                switch (type) {
+                    case INT:
+                        environment.setInt(distance, slot, evaluateInt(value));
+                        return;
+                    case FLOAT:
+                        environment.setDouble(distance, slot, evaluateDouble(value));
+                        return;
+                    case BOOL:
+                        environment.setBoolean(distance, slot, evaluateBoolean(value));
+                        return;
+                }
+            } catch (Environment.Unset unset) {
+                // The value is a NIL variable; the copy is NIL too.
+                environment.unsetAt(distance, slot);
+                return;
+            }
+        }
+
+        environment.assignAt(distance, slot, checkAssignable(name, type, evaluate(value)));
+    }
+
+    static Object checkAssignable(Token name, TokenType type, Object value) {
+        // A NIL variable copies as NIL, whatever its type.
+        if (value == null) return null;
+        boolean matches;
+        switch (type) {
+            case INT: matches = value instanceof Integer; break;
+            case FLOAT: matches = value instanceof Double; break;
+            case BOOL: matches = value instanceof Boolean; break;
+            case CHAR: matches = value instanceof Character; break;
+            default: matches = Rope.isText(value); break;
+        }
+
+        if (!matches) {
+            throw new RuntimeError(name, "Invalid assignment value. Value should be of type " + type);
+        }
+        return value;
+    }
+
     private void execute(Stmt stmt) {
-        stmt.accept(this);
+        statements++;
+        if (profiler != null) {
+            profiler.execute(stmt, this);
+        } else {
+            stmt.accept(this);
+        }
     }
 
     void executeBlock(List<Stmt> statements, Environment environment) {
@@ -145,11 +483,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             this.environment = environment;
 
             for (Stmt statement : statements) {
-                if (statement instanceof Stmt.Var varStmt) {
-                    environment.define(varStmt.name.lexeme, varStmt.initializer != null ? evaluate(varStmt.initializer) : null, varStmt.type);
-                } else {
-                    execute(statement);
-                }
+                execute(statement);
             }
         } finally {
             this.environment = previous;
@@ -158,19 +492,109 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        if (stmt.layout == null) {
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+            return null;
+        }
+
+        scopes++;
+        executeBlock(stmt.statements, new Environment(environment, stmt.layout));
         return null;
     }
 
     @Override
     public Void visitExpressionStmt(Stmt.Expression stmt) {
-        evaluate(stmt.expression);
+        discard(stmt.expression);
+        return null;
+    }
+
+    // Evaluates an expression for its effect only.
+    private void discard(Expr expr) {
+        if (expr instanceof Expr.Assign assign) {
+            assign(assign.depth, assign.slot, assign.type, assign.name, assign.value);
+            return;
+        }
+
+        evaluate(expr);
+    }
+
+    // At most one scope for the loop's variable and one for the body, which
+    // every iteration reuses: CODE has no closures, so nothing can hold on
+    // to an iteration's variables, and each declaration resets its
+    // variable as the body runs it again.
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        Environment previous = this.environment;
+        try {
+            if (stmt.layout != null) {
+                scopes++;
+                this.environment = new Environment(previous, stmt.layout);
+            }
+            if (stmt.initializer != null) execute(stmt.initializer);
+
+            Stmt.Block block = stmt.body instanceof Stmt.Block body ? body : null;
+            Environment scope = environment;
+            if (block != null && block.layout != null) {
+                scopes++;
+                scope = new Environment(environment, block.layout);
+            }
+
+            if (stmt.counter >= 0) {
+                countedLoop(stmt, block, scope);
+                return null;
+            }
+            while (condition(stmt.condition)) {
+                if (--fuel < 0) safepoint(stmt.keyword);
+                if (block != null) {
+                    executeBlock(block.statements, scope);
+                } else {
+                    execute(stmt.body);
+                }
+                if (stmt.increment != null) discard(stmt.increment);
+            }
+        } finally {
+            this.environment = previous;
+        }
         return null;
     }
 
+    // The counter stays in its slot, where the body can read and assign
+    // it, but the test and the step are done here on plain ints.
+    private void countedLoop(Stmt.For stmt, Stmt.Block block, Environment scope) {
+        Environment loop = environment;
+        int slot = stmt.counter;
+        while (true) {
+            int counter;
+            int limit;
+            try {
+                counter = loop.getInt(0, slot);
+                limit = evaluateInt(stmt.limit);
+            } catch (Environment.Unset unset) {
+                throw new RuntimeError(((Expr.Binary) stmt.condition).operator, "Operands must be numbers.");
+            }
+            if (stmt.inclusive ? counter > limit : counter >= limit) return;
+
+            if (--fuel < 0) safepoint(stmt.keyword);
+            if (block != null) {
+                executeBlock(block.statements, scope);
+            } else {
+                execute(stmt.body);
+            }
+            try {
+                loop.setInt(0, slot, loop.getInt(0, slot) + stmt.step);
+            } catch (Environment.Unset unset) {
+                // The body made the counter NIL; the step's '+' fails on it.
+                Expr.Assign step = (Expr.Assign) stmt.increment;
+                throw new RuntimeError(((Expr.Binary) step.value).operator, "Operands must be numbers.");
+            }
+        }
+    }
+
     @Override
     public Void visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
+        if (condition(stmt.condition)) {
             execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
             execute(stmt.elseBranch);
@@ -181,76 +605,123 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        String text = stringify(value);
+        if (limits.output > 0) {
+            outputLeft -= text.length() + 1;
+            if (outputLeft < 0) throw new RuntimeError(stmt.keyword, "Output limit exceeded.");
+        }
+        output.println(text);
         return null;
     }
 
     @Override
     public Void visitScanStmt(Stmt.Scan stmt) {
-        String input = new Scanner(System.in).nextLine();
-        String[] values = input.split(",");
-        if (values.length != stmt.variables.size()) {
-            throw new RuntimeError(stmt.variables.get(0), "Number of input values does not match number of variables.");
-        }
-        for (int i = 0; i < values.length; i++) {
-            Token variable = stmt.variables.get(i);
-            Object value = values[i];
-            TokenType type = environment.getType(variable.lexeme);
+        output.beforeScan();
+        if (input.nextLine(stmt.variables.get(0).name) != stmt.variables.size()) {
+            throw new RuntimeError(stmt.variables.get(0).name, "Number of input values does not match number of variables.");
+        }
+        inputValues += stmt.variables.size();
+        for (Expr.Variable variable : stmt.variables) {
+            TokenType type = environment.getTypeAt(variable.depth, variable.slot);
             switch (type) {
                 case INT:
-                    value = Integer.parseInt(values[i]);
+                    environment.setInt(variable.depth, variable.slot, input.nextInt(variable.name));
                     break;
                 case FLOAT:
-                    value = Double.parseDouble(values[i]);
+                    environment.setDouble(variable.depth, variable.slot, input.nextDouble(variable.name));
                     break;
                 case BOOL:
-                    value = Boolean.parseBoolean(values[i].toLowerCase());
-                    break;
-                case CHAR:
-                    value = values[i].charAt(0);
-                    break;
-                case STRING:
-                    value = values[i];
+                    environment.setBoolean(variable.depth, variable.slot, input.nextBoolean());
                     break;
                 default:
-                    throw new RuntimeError(variable, "Unsupported variable type.");
+                    environment.assignAt(variable.depth, variable.slot, input.next(variable.name, type));
             }
-            environment.assign(variable, value);
         }
         return null;
     }
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        if (isExistingVar(stmt.name)) {
-            throw new RuntimeError(stmt.name, "Variable " + "'" + stmt.name.lexeme + "'" + " already exists!");
-        }
-        Object value = null;
+        environment.define(stmt.slot, stmt.type);
         if (stmt.initializer != null) {
-            value = evaluate(stmt.initializer);
+            assign(0, stmt.slot, stmt.type, stmt.name, stmt.initializer);
+        } else {
+            environment.unsetAt(0, stmt.slot);
         }
-
-        environment.define(stmt.name.lexeme, value, stmt.type);
         return null;
     }
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
-        while (isTruthy(evaluate(stmt.condition))) {
+        while (condition(stmt.condition)) {
+            if (--fuel < 0) safepoint(stmt.keyword);
             execute(stmt.body);
         }
         return null;
     }
 
+    // Loops are the only way a program runs long, so every limit on time
+    // is enforced here, once per CHECK_INTERVAL iterations at most. An
+    // interrupt, from a server enforcing its own deadline, also stops it.
+    private void safepoint(Token loop) {
+        iterations += granted;
+        Metrics.iterations.add(granted);
+        publish();
+        if (Thread.interrupted()) throw new CancellationException("Time limit exceeded.");
+        if (limits.steps > 0) {
+            stepsLeft -= granted;
+            if (stepsLeft <= 0) throw new RuntimeError(loop, "Step limit exceeded.");
+        }
+        if (limits.millis > 0 && System.nanoTime() - deadline >= 0) {
+            throw new RuntimeError(loop, "Time limit exceeded.");
+        }
+        refuel();
+        // This iteration is the first of the new allowance.
+        fuel--;
+    }
+
+    // Adds the counts so far to Metrics, so a long run shows up while it
+    // is still going.
+    private void publish() {
+        Metrics.statements.add(statements);
+        Metrics.expressions.add(expressions);
+        Metrics.lookups.add(lookups);
+        Metrics.scopes.add(scopes);
+        Metrics.inputValues.add(inputValues);
+        statementsRun += statements;
+        statements = expressions = lookups = scopes = inputValues = 0;
+    }
+
+    private void refuel() {
+        granted = limits.steps > 0 ? (int) Math.min(CHECK_INTERVAL, stepsLeft) : CHECK_INTERVAL;
+        fuel = granted;
+    }
+
+    CharSequence limitLength(CharSequence text, Token operator) {
+        limitLength(text.length(), operator);
+        return text;
+    }
+
+    void limitLength(long length, Token operator) {
+        if (limits.string > 0 && length > limits.string) {
+            throw new RuntimeError(operator, "String limit exceeded.");
+        }
+    }
+
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
-        Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
-        return value;
+        assign(expr.depth, expr.slot, expr.type, expr.name, expr.value);
+        return environment.getAt(expr.depth, expr.slot);
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (expr instanceof TypedExpr.IntBinary node) return apply(node);
+        if (expr instanceof TypedExpr.FloatBinary node) return apply(node);
+        if (expr instanceof TypedExpr.Comparison node) return apply(node);
+        if (expr instanceof SpecializingExpr.Concatenation node) return node.evaluate(this);
+        if (expr instanceof SpecializingExpr.Equality node) return node.evaluate(this);
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
@@ -309,28 +780,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                     return (int) left + (int) right;
                 }
             case AMPERSAND:
-                //if (left instanceof String && right instanceof String) {
-                //    return (String)left + (String)right;
-                //}
-                String leftCopy;
-                String rightCopy;
-                if (left instanceof String) {
-                    leftCopy = (String) left;
-                } else if (left instanceof Boolean) {
-                    leftCopy = left.toString().toUpperCase();
-                } else {
-                    leftCopy = left.toString();
-                }
-
-                if (right instanceof String) {
-                    rightCopy = (String) right;
-                } else if (right instanceof Boolean) {
-                    rightCopy = right.toString().toUpperCase();
-                } else {
-                    rightCopy = right.toString();
-                }
-
-                return leftCopy + rightCopy;
+                return limitLength(concatenate(left, right), expr.operator);
             case SLASH:
                 checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Double && right instanceof Double) {
@@ -0,0 +1,537 @@
+package code;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+// Translates a checked program into a Java class with typed locals and
+// native control flow, compiles it with the JDK's javac and packs the
+// result into a runnable jar. The program has been through the
+// TypeChecker, so every expression carries its type and every operator is
+// the TypedExpr or SpecializingExpr node for its operands; each node class
+// maps to one Java expression.
+// A typed variable declared without a value is NIL until assigned, and so
+// is one that copies it. Those become boxed locals holding null, and are
+// checked wherever the other engines would fail on NIL.
+class JvmCompiler implements Expr.Visitor<String>, Stmt.Visitor<Void> {
+    private static final String NUMBERS = "Operands must be numbers.";
+    private static final String BOOLS = "Operands must be of type BOOL.";
+
+    private final String className;
+    private final StringBuilder body = new StringBuilder();
+    private final List<String[]> names = new ArrayList<>();
+    private final List<Stmt.Var[]> declarations = new ArrayList<>();
+    // Declarations that can hold NIL.
+    private final Set<Stmt.Var> nullable = new HashSet<>();
+    private boolean changed;
+    private int indent = 2;
+    private int variables = 0;
+
+    JvmCompiler(String className) {
+        this.className = className;
+    }
+
+    String translate(List<Stmt> statements, int globals) {
+        // A copy found late can make an earlier declaration nullable, so
+        // the program is translated again until no new one turns up.
+        do {
+            changed = false;
+            body.setLength(0);
+            variables = 0;
+            beginScope(globals);
+            for (Stmt statement : statements) {
+                translate(statement);
+            }
+            endScope();
+        } while (changed);
+
+        return "import java.io.BufferedReader;\n" +
+                "import java.io.IOException;\n" +
+                "import java.io.InputStreamReader;\n" +
+                "\n" +
+                "public class " + className + " {\n" +
+                "    private static final BufferedReader input = new BufferedReader(new InputStreamReader(System.in));\n" +
+                "\n" +
+                "    private static final class CodeError extends RuntimeException {\n" +
+                "        final int line;\n" +
+                "\n" +
+                "        CodeError(String message, int line) {\n" +
+                "            super(message);\n" +
+                "            this.line = line;\n" +
+                "        }\n" +
+                "    }\n" +
+                "\n" +
+                "    public static void main(String[] args) throws IOException {\n" +
+                "        try {\n" +
+                "            run();\n" +
+                "        } catch (CodeError error) {\n" +
+                "            System.err.println(error.getMessage() + \"\\n[line \" + error.line + \"]\");\n" +
+                "            System.exit(70);\n" +
+                "        }\n" +
+                "    }\n" +
+                "\n" +
+                "    private static void run() throws IOException {\n" +
+                body +
+                "    }\n" +
+                "\n" +
+                "    private static String[] scan(int count, int line) throws IOException {\n" +
+                "        String text = input.readLine();\n" +
+                "        if (text == null) {\n" +
+                "            throw new CodeError(\"No more input to read.\", line);\n" +
+                "        }\n" +
+                "        String[] values = text.split(\",\");\n" +
+                "        if (values.length != count) {\n" +
+                "            throw new CodeError(\"Number of input values does not match number of variables.\", line);\n" +
+                "        }\n" +
+                "        return values;\n" +
+                "    }\n" +
+                "\n" +
+                "    private static int scanInt(String value, int line) {\n" +
+                "        try {\n" +
+                "            return Integer.parseInt(value);\n" +
+                "        } catch (NumberFormatException error) {\n" +
+                "            throw new CodeError(\"Input value is not a valid INT.\", line);\n" +
+                "        }\n" +
+                "    }\n" +
+                "\n" +
+                "    private static double scanFloat(String value, int line) {\n" +
+                "        try {\n" +
+                "            return Double.parseDouble(value);\n" +
+                "        } catch (NumberFormatException error) {\n" +
+                "            throw new CodeError(\"Input value is not a valid FLOAT.\", line);\n" +
+                "        }\n" +
+                "    }\n" +
+                "\n" +
+                "    private static char scanChar(String value, int line) {\n" +
+                "        if (value.isEmpty()) {\n" +
+                "            throw new CodeError(\"Input value is not a valid CHAR.\", line);\n" +
+                "        }\n" +
+                "        return value.charAt(0);\n" +
+                "    }\n" +
+                "\n" +
+                "    private static String text(boolean value) {\n" +
+                "        return value ? \"TRUE\" : \"FALSE\";\n" +
+                "    }\n" +
+                "\n" +
+                "    private static String text(String value) {\n" +
+                "        return value.toString();\n" +
+                "    }\n" +
+                "\n" +
+                "    private static String stringify(double value) {\n" +
+                "        String text = Double.toString(value);\n" +
+                "        if (text.endsWith(\".0\")) {\n" +
+                "            text = text.substring(0, text.length() - 2);\n" +
+                "        }\n" +
+                "        return text;\n" +
+                "    }\n" +
+                "\n" +
+                "    private static String stringify(String value) {\n" +
+                "        return value == null ? \"NIL\" : value;\n" +
+                "    }\n" +
+                "\n" +
+                "    private static String stringify(Object value) {\n" +
+                "        if (value instanceof Double) return stringify((double) (Double) value);\n" +
+                "        if (value instanceof Boolean) return text((boolean) (Boolean) value);\n" +
+                "        return value == null ? \"NIL\" : value.toString();\n" +
+                "    }\n" +
+                "\n" +
+                "    private static String text(Object value) {\n" +
+                "        if (value instanceof Boolean) return text((boolean) (Boolean) value);\n" +
+                "        return value.toString();\n" +
+                "    }\n" +
+                "\n" +
+                "    private static <T> T value(T value, String message, int line) {\n" +
+                "        if (value == null) {\n" +
+                "            throw new CodeError(message, line);\n" +
+                "        }\n" +
+                "        return value;\n" +
+                "    }\n" +
+                "\n" +
+                "    private static boolean truth(boolean value) {\n" +
+                "        return value;\n" +
+                "    }\n" +
+                "\n" +
+                "    private static void discard(Object value) {\n" +
+                "    }\n" +
+                "}\n";
+    }
+
+    void compile(String source, Path jar) throws IOException {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw new IOException("No Java compiler available. Run code compile on a JDK, not a JRE.");
+        }
+
+        Path work = Files.createTempDirectory("code-compile");
+        try {
+            Path file = work.resolve(className + ".java");
+            Files.writeString(file, source);
+
+            ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+            int status = javac.run(null, null, diagnostics,
+                    "-nowarn", "-d", work.toString(), file.toString());
+            if (status != 0) {
+                throw new IOException("Generated class failed to compile:\n" + diagnostics);
+            }
+
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+            try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest);
+                 Stream<Path> classes = Files.list(work)) {
+                for (Path path : (Iterable<Path>) classes.filter(p -> p.toString().endsWith(".class"))::iterator) {
+                    out.putNextEntry(new JarEntry(path.getFileName().toString()));
+                    out.write(Files.readAllBytes(path));
+                    out.closeEntry();
+                }
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(work)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private void translate(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private String translate(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void beginScope(int size) {
+        names.add(new String[size]);
+        declarations.add(new Stmt.Var[size]);
+    }
+
+    private void endScope() {
+        names.remove(names.size() - 1);
+        declarations.remove(declarations.size() - 1);
+    }
+
+    private String nameOf(int depth, int slot) {
+        return names.get(names.size() - 1 - depth)[slot];
+    }
+
+    private Stmt.Var declarationOf(int depth, int slot) {
+        return declarations.get(declarations.size() - 1 - depth)[slot];
+    }
+
+    // Whether expr reads a variable that can be NIL. STRING variables hold
+    // null as they are and are never in nullable.
+    private boolean isNullable(Expr expr) {
+        if (expr instanceof Expr.Variable variable) {
+            return nullable.contains(declarationOf(variable.depth, variable.slot));
+        }
+        if (expr instanceof Expr.Assign assign) {
+            return nullable.contains(declarationOf(assign.depth, assign.slot));
+        }
+        return false;
+    }
+
+    private void makeNullable(Stmt.Var declaration) {
+        if (declaration.type != TokenType.STRING && nullable.add(declaration)) changed = true;
+    }
+
+    // An operand that cannot be NIL: a nullable variable is checked, and
+    // fails with message at token (or at the variable, if token is null).
+    private String operand(Expr operand, Token token, String message) {
+        String code = translate(operand);
+        if (!isNullable(operand)) return code;
+        if (token == null) {
+            token = operand instanceof Expr.Variable variable ? variable.name : ((Expr.Assign) operand).name;
+        }
+        return "value(" + code + ", \"" + message + "\", " + token.line + ")";
+    }
+
+    private void line(String code) {
+        body.append("    ".repeat(indent)).append(code).append('\n');
+    }
+
+    private static String javaType(TokenType type, boolean nullable) {
+        switch (type) {
+            case INT: return nullable ? "Integer" : "int";
+            case FLOAT: return nullable ? "Double" : "double";
+            case BOOL: return nullable ? "Boolean" : "boolean";
+            case CHAR: return nullable ? "Character" : "char";
+            default: return "String";
+        }
+    }
+
+    private static String literal(Object value) {
+        if (value == null) return "(String) null";
+        if (value instanceof Integer) return value.toString();
+        if (value instanceof Double) return Double.toString((double) value);
+        if (value instanceof Boolean) return value.toString();
+        if (value instanceof Character) return "'" + escape(value.toString()) + "'";
+        return "\"" + escape((String) value) + "\"";
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\\': escaped.append("\\\\"); break;
+                case '"': escaped.append("\\\""); break;
+                case '\'': escaped.append("\\'"); break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+
+    // The text '&' joins for an operand of this type.
+    private String text(Expr operand) {
+        String code = translate(operand);
+        if (isNullable(operand)) return "text((Object) " + code + ")";
+        switch (operand.type) {
+            case BOOL: case STRING: case NIL: return "text(" + code + ")";
+            default: return "String.valueOf(" + code + ")";
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        line("{");
+        indent++;
+        if (stmt.layout != null) beginScope(stmt.layout.length);
+        for (Stmt statement : stmt.statements) {
+            translate(statement);
+        }
+        if (stmt.layout != null) endScope();
+        indent--;
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        if (stmt.expression instanceof Expr.Assign assign) {
+            if (isNullable(assign.value)) makeNullable(declarationOf(assign.depth, assign.slot));
+            line(nameOf(assign.depth, assign.slot) + " = " + translate(assign.value) + ";");
+        } else {
+            line("discard(" + translate(stmt.expression) + ");");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        line("{");
+        indent++;
+        if (stmt.layout != null) beginScope(stmt.layout.length);
+        if (stmt.initializer != null) translate(stmt.initializer);
+        line("while (" + condition(stmt.condition) + ")");
+        line("{");
+        indent++;
+        translate(stmt.body);
+        if (stmt.increment != null) translate(new Stmt.Expression(stmt.increment));
+        indent--;
+        line("}");
+        if (stmt.layout != null) endScope();
+        indent--;
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        line("if (" + operand(stmt.condition, null, "Condition must be of type BOOL.") + ")");
+        translate(stmt.thenBranch);
+        if (stmt.elseBranch != null) {
+            line("else");
+            translate(stmt.elseBranch);
+        }
+        return null;
+    }
+
+    // A loop condition. javac rejects the code after a constant
+    // WHILE (TRUE) as unreachable, so a constant goes through truth().
+    private String condition(Expr expr) {
+        String condition = operand(expr, null, "Condition must be of type BOOL.");
+        return isConstant(expr) ? "truth(" + condition + ")" : condition;
+    }
+
+    private static boolean isConstant(Expr expr) {
+        if (expr instanceof Expr.Literal) return true;
+        if (expr instanceof Expr.Unary unary) return isConstant(unary.right);
+        if (expr instanceof Expr.Binary binary) return isConstant(binary.left) && isConstant(binary.right);
+        if (expr instanceof Expr.Logical logical) return isConstant(logical.left) && isConstant(logical.right);
+        return false;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        String value = translate(stmt.expression);
+        String text;
+        switch (isNullable(stmt.expression) ? TokenType.NIL : stmt.expression.type) {
+            case NIL:
+                text = "stringify((Object) " + value + ")";
+                break;
+            case FLOAT: case STRING:
+                text = "stringify(" + value + ")";
+                break;
+            case BOOL:
+                text = "text(" + value + ")";
+                break;
+            default:
+                text = "String.valueOf(" + value + ")";
+        }
+        line("System.out.println(" + text + ");");
+        return null;
+    }
+
+    @Override
+    public Void visitScanStmt(Stmt.Scan stmt) {
+        String values = "scan" + (variables++);
+        line("{");
+        indent++;
+        line("String[] " + values + " = scan(" + stmt.variables.size() + ", "
+                + stmt.variables.get(0).name.line + ");");
+        for (int i = 0; i < stmt.variables.size(); i++) {
+            Expr.Variable variable = stmt.variables.get(i);
+            String name = nameOf(variable.depth, variable.slot);
+            String value = values + "[" + i + "]";
+            int line = variable.name.line;
+            switch (variable.type) {
+                case INT: line(name + " = scanInt(" + value + ", " + line + ");"); break;
+                case FLOAT: line(name + " = scanFloat(" + value + ", " + line + ");"); break;
+                case BOOL: line(name + " = Boolean.parseBoolean(" + value + ".toLowerCase());"); break;
+                case CHAR: line(name + " = scanChar(" + value + ", " + line + ");"); break;
+                default: line(name + " = " + value + ";");
+            }
+        }
+        indent--;
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null || isNullable(stmt.initializer)) makeNullable(stmt);
+        String value = stmt.initializer != null ? translate(stmt.initializer) : "null";
+
+        // CODE lets blocks shadow outer variables; Java does not, so every
+        // declaration gets its own name.
+        String name = stmt.name.lexeme + "_" + (variables++);
+        names.get(names.size() - 1)[stmt.slot] = name;
+        declarations.get(declarations.size() - 1)[stmt.slot] = stmt;
+        line(javaType(stmt.type, nullable.contains(stmt)) + " " + name + " = " + value + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        line("while (" + condition(stmt.condition) + ")");
+        translate(stmt.body);
+        return null;
+    }
+
+    @Override
+    public String visitAssignExpr(Expr.Assign expr) {
+        if (isNullable(expr.value)) makeNullable(declarationOf(expr.depth, expr.slot));
+        return "(" + nameOf(expr.depth, expr.slot) + " = " + translate(expr.value) + ")";
+    }
+
+    @Override
+    public String visitBinaryExpr(Expr.Binary expr) {
+        if (expr instanceof SpecializingExpr.Concatenation chain) {
+            // One flat argument list: javac recurses once per '+', and a
+            // long chain of them overflows its stack.
+            StringJoiner pieces = new StringJoiner(", ", "String.join(\"\", ", ")");
+            for (Expr operand : chain.operands) pieces.add(text(operand));
+            return pieces.toString();
+        }
+
+        boolean negated = expr.operator.type == TokenType.LESS_GREATER;
+        if (negated || expr.operator.type == TokenType.EQUAL_EQUAL) {
+            String left = translate(expr.left);
+            String right = translate(expr.right);
+            // NIL equals only NIL, as Objects.equals has it.
+            boolean boxed = isNullable(expr.left) || isNullable(expr.right);
+            String equal;
+            if (expr.left.type == TokenType.CHAR && expr.right.type == TokenType.CHAR && !boxed) {
+                equal = "(" + left + " == " + right + ")";
+            } else if (expr instanceof SpecializingExpr.Equality || boxed) {
+                equal = "java.util.Objects.equals((Object) " + left + ", (Object) " + right + ")";
+            } else if (expr instanceof TypedExpr.FloatEqual || expr instanceof TypedExpr.FloatNotEqual) {
+                // Double.compare's equality, as the Interpreter uses.
+                equal = "(Double.doubleToLongBits(" + left + ") == Double.doubleToLongBits(" + right + "))";
+            } else {
+                equal = "(" + left + " == " + right + ")";
+            }
+            return negated ? "!" + equal : equal;
+        }
+
+        String left = operand(expr.left, expr.operator, NUMBERS);
+        String right = operand(expr.right, expr.operator, NUMBERS);
+        String op;
+        switch (expr.operator.type) {
+            case GREATER: op = ">"; break;
+            case GREATER_EQUAL: op = ">="; break;
+            case LESS: op = "<"; break;
+            case LESS_EQUAL: op = "<="; break;
+            case MINUS: op = "-"; break;
+            case PLUS: op = "+"; break;
+            case SLASH: op = "/"; break;
+            case STAR: op = "*"; break;
+            default: op = "%"; break;
+        }
+        return "(" + left + " " + op + " " + right + ")";
+    }
+
+    @Override
+    public String visitGroupingExpr(Expr.Grouping expr) {
+        return "(" + translate(expr.expression) + ")";
+    }
+
+    @Override
+    public String visitLiteralExpr(Expr.Literal expr) {
+        return literal(expr.value);
+    }
+
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        String op = expr instanceof TypedExpr.BoolOr ? " || " : " && ";
+        return "(" + operand(expr.left, expr.operator, BOOLS) + op + operand(expr.right, expr.operator, BOOLS) + ")";
+    }
+
+    @Override
+    public String visitUnaryExpr(Expr.Unary expr) {
+        if (expr instanceof TypedExpr.BoolNot) {
+            return "(!" + operand(expr.right, expr.operator, "Operand must be of type BOOL.") + ")";
+        }
+        // The space keeps "-" and a negative literal from reading as "--".
+        return "(- " + operand(expr.right, expr.operator, "Operand must be a number.") + ")";
+    }
+
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return nameOf(expr.depth, expr.slot);
+    }
+}
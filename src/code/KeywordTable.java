@@ -0,0 +1,95 @@
+package code;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Recognizes keywords straight from the source characters. Every keyword
+// has a different (first char, last char, length), so a multiplicative
+// hash of those three picks one slot, chosen at class load to be collision
+// free for the Scanner's table, and a single compare confirms the word.
+// Identifiers are never copied out of the source just to look them up.
+class KeywordTable {
+    private static final int MAX_LENGTH = 16;
+    // Multipliers tried before giving up on a table of this size.
+    private static final int MAX_ATTEMPTS = 1 << 16;
+
+    private final int multiplier;
+    private final int shift;
+    private final char[][] words;
+    private final TokenType[] types;
+
+    KeywordTable(Map<String, TokenType> keywords) {
+        checkDistinct(keywords);
+        int bits = 32 - Integer.numberOfLeadingZeros(keywords.size() * 3 - 1);
+        shift = 32 - bits;
+
+        for (int i = 1; i <= MAX_ATTEMPTS; i++) {
+            int candidate = 0x9E3779B9 * i | 1;
+            char[][] table = new char[1 << bits][];
+            TokenType[] tableTypes = new TokenType[1 << bits];
+            if (place(keywords, candidate, table, tableTypes)) {
+                multiplier = candidate;
+                words = table;
+                types = tableTypes;
+                return;
+            }
+        }
+        throw new IllegalStateException("No collision-free keyword table after " + MAX_ATTEMPTS + " multipliers.");
+    }
+
+    // Two keywords with the same hash key would collide under every
+    // multiplier, so the search above would never end.
+    private static void checkDistinct(Map<String, TokenType> keywords) {
+        Map<Integer, String> seen = new HashMap<>();
+        for (String word : keywords.keySet()) {
+            int length = word.length();
+            if (length == 0 || length > MAX_LENGTH) throw new IllegalArgumentException("Keyword length out of range: " + word);
+
+            String other = seen.put(key(word.charAt(0), word.charAt(length - 1), length), word);
+            if (other != null) {
+                throw new IllegalStateException("Keywords " + other + " and " + word
+                        + " share their first char, last char and length.");
+            }
+        }
+    }
+
+    private static int key(char first, char last, int length) {
+        return first << 16 | last << 8 | length;
+    }
+
+    private boolean place(Map<String, TokenType> keywords, int candidate,
+                          char[][] table, TokenType[] tableTypes) {
+        for (Map.Entry<String, TokenType> keyword : keywords.entrySet()) {
+            String word = keyword.getKey();
+            int length = word.length();
+            int slot = slot(candidate, word.charAt(0), word.charAt(length - 1), length);
+            if (table[slot] != null) return false;
+            table[slot] = word.toCharArray();
+            tableTypes[slot] = keyword.getValue();
+        }
+        return true;
+    }
+
+    private int slot(int multiplier, char first, char last, int length) {
+        return (key(first, last, length) * multiplier) >>> shift;
+    }
+
+    // The keyword spelled by source[start, end), or IDENTIFIER.
+    TokenType lookup(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length == 0 || length > MAX_LENGTH) return TokenType.IDENTIFIER;
+
+        int slot = slot(multiplier, source.charAt(start), source.charAt(end - 1), length);
+        char[] word = words[slot];
+        if (word == null || !matches(source, start, end, word)) return TokenType.IDENTIFIER;
+        return types[slot];
+    }
+
+    static boolean matches(CharSequence source, int start, int end, char[] word) {
+        if (end - start != word.length) return false;
+        for (int i = 0; i < word.length; i++) {
+            if (source.charAt(start + i) != word[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package code;
+
+// Caps on what one run of a program may use, for running code that is not
+// trusted. A zero leaves that resource unlimited. Going over any of them
+// stops the program with a runtime error naming the limit and the line.
+//
+// steps    - iterations of WHILE and FOR loops, over the whole run. CODE
+//            has no functions, so a program can only run long by looping.
+// millis   - wall-clock time from the start of the run.
+// output   - characters written by DISPLAY, counting each line's newline.
+// string   - the length of any one string built with '&'.
+public final class Limits {
+    public static final Limits NONE = new Limits(0, 0, 0, 0);
+
+    final long steps;
+    final long millis;
+    final long output;
+    final int string;
+
+    public Limits(long steps, long millis, long output, int string) {
+        if (steps < 0 || millis < 0 || output < 0 || string < 0) {
+            throw new IllegalArgumentException("Limits cannot be negative.");
+        }
+        this.steps = steps;
+        this.millis = millis;
+        this.output = output;
+        this.string = string;
+    }
+}
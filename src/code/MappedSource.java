@@ -0,0 +1,58 @@
+package code;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+// A source file the Scanner reads in place from a memory-mapped buffer,
+// one byte per char. CODE outside of string literals and comments is
+// ASCII, so only a slice that actually contains other bytes is decoded
+// with the platform charset when the Scanner takes its text.
+final class MappedSource implements CharSequence {
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    private MappedSource(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    static MappedSource open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedSource(bytes, 0, bytes.limit());
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new MappedSource(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] text = new byte[length];
+        bytes.get(offset, text);
+        for (byte b : text) {
+            if (b < 0) return new String(text, CHARSET);
+        }
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,251 @@
+package code;
+
+import jdk.jfr.FlightRecorder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters of the work every Interpreter in this JVM has done, for the
+// periodic Throughput event, the MetricsMXBean and the server's /metrics
+// page. An Interpreter counts in plain fields of its own and adds them
+// here at run boundaries and once per loop safepoint, never per
+// statement, so they cost nothing that shows up even with many programs
+// running at once.
+final class Metrics {
+    static final String OBJECT_NAME = "code:type=Metrics";
+
+    static final LongAdder started = new LongAdder();
+    static final LongAdder finished = new LongAdder();
+    static final LongAdder statements = new LongAdder();
+    static final LongAdder expressions = new LongAdder();
+    static final LongAdder lookups = new LongAdder();
+    static final LongAdder scopes = new LongAdder();
+    static final LongAdder iterations = new LongAdder();
+    static final LongAdder outputBytes = new LongAdder();
+    static final LongAdder inputValues = new LongAdder();
+    // By message; CODE's runtime errors have only a handful of them.
+    static final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    static final Histogram latency = new Histogram();
+
+    // What the previous Throughput event reported; only its hook uses these.
+    private static long lastFinished;
+    private static long lastIterations;
+    private static long lastOutputBytes;
+
+    static {
+        FlightRecorder.addPeriodicEvent(Events.Throughput.class, Metrics::emitThroughput);
+    }
+
+    private Metrics() {}
+
+    static void error(String message) {
+        errors.computeIfAbsent(message, key -> new LongAdder()).increment();
+    }
+
+    // Registers the MXBean with the platform MBean server, once.
+    static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(new Bean(), MetricsMXBean.class, true), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException error) {
+            // Already published.
+        } catch (MalformedObjectNameException error) {
+            throw new IllegalStateException(error);
+        } catch (JMException error) {
+            throw new IllegalStateException("Cannot publish metrics: " + error.getMessage(), error);
+        }
+    }
+
+    // One "name value" line per metric, for scraping as text.
+    static String text() {
+        Bean bean = new Bean();
+        StringBuilder out = new StringBuilder();
+        line(out, "code_programs_started", bean.getProgramsStarted());
+        line(out, "code_programs_running", bean.getProgramsRunning());
+        line(out, "code_programs_finished", bean.getProgramsFinished());
+        line(out, "code_statements", bean.getStatements());
+        line(out, "code_expressions", bean.getExpressions());
+        line(out, "code_variable_lookups", bean.getVariableLookups());
+        line(out, "code_scopes", bean.getScopes());
+        line(out, "code_loop_iterations", bean.getLoopIterations());
+        line(out, "code_output_bytes", bean.getOutputBytes());
+        line(out, "code_input_values", bean.getInputValues());
+        for (Map.Entry<String, Long> entry : bean.getRuntimeErrors().entrySet()) {
+            line(out, "code_runtime_errors{message=\"" + entry.getKey().replace("\"", "\\\"") + "\"}",
+                    entry.getValue());
+        }
+        line(out, "code_latency_millis{quantile=\"0.5\"}", bean.getLatencyP50Millis());
+        line(out, "code_latency_millis{quantile=\"0.9\"}", bean.getLatencyP90Millis());
+        line(out, "code_latency_millis{quantile=\"0.99\"}", bean.getLatencyP99Millis());
+        line(out, "code_latency_millis{quantile=\"1\"}", bean.getLatencyMaxMillis());
+        return out.toString();
+    }
+
+    private static void line(StringBuilder out, String name, Object value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void emitThroughput() {
+        Events.Throughput event = new Events.Throughput();
+        long done = finished.sum();
+        long looped = iterations.sum();
+        long written = outputBytes.sum();
+        event.running = started.sum() - done;
+        event.finished = done - lastFinished;
+        event.iterations = looped - lastIterations;
+        event.outputBytes = written - lastOutputBytes;
+        lastFinished = done;
+        lastIterations = looped;
+        lastOutputBytes = written;
+        event.commit();
+    }
+
+    // Run times in microseconds, in buckets a power of two wide split into
+    // eight, so any percentile read back is within an eighth of the truth.
+    // Each bucket is its own LongAdder, so recording never contends.
+    static class Histogram {
+        private static final int SUB_BUCKETS = 8;
+        private static final int SHIFT = 3;
+
+        private final LongAdder[] buckets = new LongAdder[(64 - SHIFT + 1) * SUB_BUCKETS];
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+            buckets[index(micros)].increment();
+            max.accumulate(micros);
+        }
+
+        // The smallest recorded time that at least this fraction of runs
+        // took no longer than, rounded up to its bucket's end.
+        double percentileMillis(double fraction) {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(lowest(i + 1) - 1, max.get()) / 1000.0;
+            }
+            return max.get() / 1000.0;
+        }
+
+        double maxMillis() {
+            return max.get() / 1000.0;
+        }
+
+        private static int index(long micros) {
+            if (micros < SUB_BUCKETS) return (int) micros;
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exponent - SHIFT)) & (SUB_BUCKETS - 1);
+            return (exponent - SHIFT + 1) * SUB_BUCKETS + sub;
+        }
+
+        private static long lowest(int index) {
+            if (index < SUB_BUCKETS) return index;
+            int exponent = index / SUB_BUCKETS + SHIFT - 1;
+            if (exponent > 62) return Long.MAX_VALUE;
+            return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SHIFT);
+        }
+    }
+
+    // Reads the counters for JMX; every call sums them afresh.
+    private static class Bean implements MetricsMXBean {
+        @Override
+        public long getProgramsStarted() {
+            return started.sum();
+        }
+
+        @Override
+        public long getProgramsRunning() {
+            return started.sum() - finished.sum();
+        }
+
+        @Override
+        public long getProgramsFinished() {
+            return finished.sum();
+        }
+
+        @Override
+        public long getStatements() {
+            return statements.sum();
+        }
+
+        @Override
+        public long getExpressions() {
+            return expressions.sum();
+        }
+
+        @Override
+        public long getVariableLookups() {
+            return lookups.sum();
+        }
+
+        @Override
+        public long getScopes() {
+            return scopes.sum();
+        }
+
+        @Override
+        public long getLoopIterations() {
+            return iterations.sum();
+        }
+
+        @Override
+        public long getOutputBytes() {
+            return outputBytes.sum();
+        }
+
+        @Override
+        public long getInputValues() {
+            return inputValues.sum();
+        }
+
+        @Override
+        public Map<String, Long> getRuntimeErrors() {
+            Map<String, Long> counts = new TreeMap<>();
+            errors.forEach((message, count) -> counts.put(message, count.sum()));
+            return counts;
+        }
+
+        @Override
+        public double getLatencyP50Millis() {
+            return latency.percentileMillis(0.5);
+        }
+
+        @Override
+        public double getLatencyP90Millis() {
+            return latency.percentileMillis(0.9);
+        }
+
+        @Override
+        public double getLatencyP99Millis() {
+            return latency.percentileMillis(0.99);
+        }
+
+        @Override
+        public double getLatencyMaxMillis() {
+            return latency.maxMillis();
+        }
+    }
+}
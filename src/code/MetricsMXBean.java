@@ -0,0 +1,44 @@
+package code;
+
+import java.util.Map;
+
+// What every tree-walking Interpreter in this JVM has done since it
+// started, published as code:type=Metrics by CodeEngine.publishMetrics
+// and by the server. Counts only ever grow; latencies are of whole runs,
+// from the start of execution to its end.
+public interface MetricsMXBean {
+    long getProgramsStarted();
+
+    long getProgramsRunning();
+
+    long getProgramsFinished();
+
+    long getStatements();
+
+    long getExpressions();
+
+    // Reads of a variable's value.
+    long getVariableLookups();
+
+    // Block scopes created.
+    long getScopes();
+
+    long getLoopIterations();
+
+    // Bytes written by DISPLAY.
+    long getOutputBytes();
+
+    // Values read by SCAN.
+    long getInputValues();
+
+    // Runtime errors by message.
+    Map<String, Long> getRuntimeErrors();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+}
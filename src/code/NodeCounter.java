@@ -0,0 +1,102 @@
+package code;
+
+import java.util.List;
+
+// Counts the statement and expression nodes in a tree, for --node-counts.
+class NodeCounter implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    int count(List<Stmt> statements) {
+        int count = 0;
+        for (Stmt statement : statements) {
+            count += statement.accept(this);
+        }
+        return count;
+    }
+
+    private int count(Expr expr) {
+        return expr == null ? 0 : expr.accept(this);
+    }
+
+    private int count(Stmt stmt) {
+        return stmt == null ? 0 : stmt.accept(this);
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+        return 1 + count(stmt.statements);
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+        return 1 + count(stmt.expression);
+    }
+
+    @Override
+    public Integer visitForStmt(Stmt.For stmt) {
+        return 1 + count(stmt.initializer) + count(stmt.condition) + count(stmt.increment) + count(stmt.body);
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+        return 1 + count(stmt.condition) + count(stmt.thenBranch) + count(stmt.elseBranch);
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+        return 1 + count(stmt.expression);
+    }
+
+    @Override
+    public Integer visitScanStmt(Stmt.Scan stmt) {
+        return 1 + stmt.variables.size();
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+        return 1 + count(stmt.initializer);
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+        return 1 + count(stmt.condition) + count(stmt.body);
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+        return 1 + count(expr.value);
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+        if (expr instanceof SpecializingExpr.Concatenation chain) {
+            int count = 1;
+            for (Expr operand : chain.operands) count += count(operand);
+            return count;
+        }
+        return 1 + count(expr.left) + count(expr.right);
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+        return 1 + count(expr.expression);
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+        return 1;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+        return 1 + count(expr.left) + count(expr.right);
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+        return 1 + count(expr.right);
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+        return 1;
+    }
+}
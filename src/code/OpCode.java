@@ -0,0 +1,77 @@
+package code;
+
+// Instruction set of the VM. Operands follow the opcode in the code array.
+// INT, FLOAT and BOOL values live unboxed in the long half of the stack and
+// frame (a FLOAT as its raw bits, a BOOL as 0 or 1) and have opcodes of
+// their own, chosen by the Compiler from the TypeChecker's types. CHAR,
+// STRING and NIL values live in the Object half, except that a typed
+// variable declared without a value holds VM.NIL_BITS until assigned.
+class OpCode {
+    static final int CONSTANT      = 0;  // [index]          push constants[index]
+    static final int NIL           = 1;
+    static final int INT           = 2;  // [value]
+    static final int FLOAT         = 3;  // [high, low]      raw bits of the double
+    static final int TRUE          = 4;
+    static final int FALSE         = 5;
+    static final int POP           = 6;
+    static final int GET_LOCAL     = 7;  // [slot]
+    static final int SET_LOCAL     = 8;  // [slot]           leaves the value on the stack
+    static final int DEFINE_LOCAL  = 9;  // [slot]           pops the value
+    static final int GET_VALUE     = 10; // [slot]           the same, for unboxed values
+    static final int SET_VALUE     = 11; // [slot]
+    static final int DEFINE_VALUE  = 12; // [slot]
+    static final int BOX_INT       = 13; // moves the top value to the Object half
+    static final int BOX_FLOAT     = 14;
+    static final int BOX_BOOL      = 15;
+    static final int EQUAL         = 16; // Objects in, BOOL out
+    static final int NOT_EQUAL     = 17;
+    static final int CONCAT        = 18; // [count]          joins the top count Objects into one
+    static final int ADD_INT       = 19;
+    static final int SUBTRACT_INT  = 20;
+    static final int MULTIPLY_INT  = 21;
+    static final int DIVIDE_INT    = 22;
+    static final int MODULO_INT    = 23;
+    static final int NEGATE_INT    = 24;
+    static final int EQUAL_INT     = 25; // also BOOL == BOOL
+    static final int NOT_EQUAL_INT = 26; // also BOOL <> BOOL
+    static final int GREATER_INT   = 27;
+    static final int GREATER_EQUAL_INT = 28;
+    static final int LESS_INT      = 29;
+    static final int LESS_EQUAL_INT = 30;
+    static final int ADD_FLOAT     = 31;
+    static final int SUBTRACT_FLOAT = 32;
+    static final int MULTIPLY_FLOAT = 33;
+    static final int DIVIDE_FLOAT  = 34;
+    static final int MODULO_FLOAT  = 35;
+    static final int NEGATE_FLOAT  = 36;
+    static final int EQUAL_FLOAT   = 37;
+    static final int NOT_EQUAL_FLOAT = 38;
+    static final int GREATER_FLOAT = 39;
+    static final int GREATER_EQUAL_FLOAT = 40;
+    static final int LESS_FLOAT    = 41;
+    static final int LESS_EQUAL_FLOAT = 42;
+    static final int NOT           = 43;
+    static final int PRINT         = 44;
+    static final int SCAN          = 45; // [token, count, (slot, type)*]
+    static final int JUMP          = 46; // [offset]
+    static final int JUMP_IF_FALSE = 47; // [offset]         leaves the condition on the stack
+    static final int LOOP          = 48; // [offset]
+    static final int POP_JUMP_IF_FALSE = 49; // [offset]
+    static final int RETURN        = 50;
+    // Superinstructions for the shapes loops are made of.
+    static final int ADD_INT_CONSTANT      = 51; // [value]  the right operand is in the code
+    static final int SUBTRACT_INT_CONSTANT = 52; // [value]
+    static final int MULTIPLY_INT_CONSTANT = 53; // [value]
+    static final int DIVIDE_INT_CONSTANT   = 54; // [value]
+    static final int MODULO_INT_CONSTANT   = 55; // [value]
+    static final int INCREMENT             = 56; // [slot, value, token]  INT variable += value
+    static final int JUMP_UNLESS_EQUAL_INT = 57; // [offset]  pops both operands
+    static final int JUMP_UNLESS_NOT_EQUAL_INT = 58; // [offset]
+    static final int JUMP_UNLESS_GREATER_INT = 59; // [offset]
+    static final int JUMP_UNLESS_GREATER_EQUAL_INT = 60; // [offset]
+    static final int JUMP_UNLESS_LESS_INT  = 61; // [offset]
+    static final int JUMP_UNLESS_LESS_EQUAL_INT = 62; // [offset]
+    static final int GET_CHECKED           = 63; // [slot, token, message]  GET_VALUE that fails on NIL
+
+    private OpCode() {}
+}
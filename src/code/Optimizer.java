@@ -0,0 +1,266 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static code.TokenType.*;
+
+// Runs after the TypeChecker. Folds operators whose operands are all
+// literals, joins runs of literal strings in '&' chains, removes IF
+// branches and WHILE and FOR loops whose condition is a constant, and marks
+// counted FOR loops. Rebuilt operators are typed again by the TypeChecker,
+// only at the new node, so they keep their specialised node class.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private final TypeChecker checker;
+    private final Interpreter folder = Interpreter.folder();
+
+    Optimizer(Reporter reporter) {
+        checker = new TypeChecker(reporter);
+    }
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>();
+        for (Stmt statement : statements) {
+            Stmt stmt = optimize(statement);
+            if (stmt != null) optimized.add(stmt);
+        }
+        return optimized;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Expr retype(Expr expr) {
+        return checker.type(expr);
+    }
+
+    private static boolean isLiteral(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static boolean isLiteral(Expr expr, boolean value) {
+        return expr instanceof Expr.Literal literal && Boolean.valueOf(value).equals(literal.value);
+    }
+
+    // Evaluates an operator over literals once, here, instead of every time
+    // it runs. Anything that fails is left alone so the error still happens
+    // at run time, on the right line.
+    private Expr fold(Expr expr) {
+        Object value;
+        try {
+            value = folder.evaluate(expr);
+        } catch (RuntimeException error) {
+            return expr;
+        }
+
+        if (value instanceof Double number && !Double.isFinite(number)) return expr;
+        return retype(new Expr.Literal(Rope.flatten(value)));
+    }
+
+    private Stmt.Block emptyBlock() {
+        return new Stmt.Block(new ArrayList<>());
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        Stmt.Block block = new Stmt.Block(optimize(stmt.statements));
+        block.layout = stmt.layout;
+        return block;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Stmt initializer = stmt.initializer != null ? optimize(stmt.initializer) : null;
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition, false)) {
+            // Only the initializer runs, still in the loop's scope.
+            if (initializer == null) return null;
+            List<Stmt> statements = new ArrayList<>();
+            statements.add(initializer);
+            Stmt.Block block = new Stmt.Block(statements);
+            block.layout = stmt.layout;
+            return block;
+        }
+
+        Expr increment = stmt.increment != null ? optimize(stmt.increment) : null;
+        Stmt body = optimize(stmt.body);
+        Stmt.For loop = new Stmt.For(stmt.keyword, initializer, condition, increment,
+                body != null ? body : emptyBlock());
+        loop.layout = stmt.layout;
+        markCounted(loop);
+        return loop;
+    }
+
+    // "INT i = a; i <= limit; i = i + step", or with '<', where step is a
+    // literal and nothing in the limit assigns: the Interpreter then steps
+    // the counter itself instead of evaluating the condition and increment.
+    private static void markCounted(Stmt.For loop) {
+        if (!(loop.initializer instanceof Stmt.Var var) || var.type != INT) return;
+        if (!(loop.condition instanceof TypedExpr.IntLess || loop.condition instanceof TypedExpr.IntLessEqual)) return;
+        Expr.Binary test = (Expr.Binary) loop.condition;
+        if (!isCounter(test.left, var.slot) || !isPure(test.right)) return;
+        if (!(loop.increment instanceof Expr.Assign assign) || assign.depth != 0 || assign.slot != var.slot) return;
+        if (!(assign.value instanceof TypedExpr.IntAdd add) || !isCounter(add.left, var.slot)) return;
+        if (!(add.right instanceof Expr.Literal literal)) return;
+
+        loop.counter = var.slot;
+        loop.inclusive = loop.condition instanceof TypedExpr.IntLessEqual;
+        loop.limit = test.right;
+        loop.step = (int) literal.value;
+    }
+
+    private static boolean isCounter(Expr expr, int slot) {
+        return expr instanceof Expr.Variable variable && variable.depth == 0 && variable.slot == slot;
+    }
+
+    private static boolean isPure(Expr expr) {
+        if (expr instanceof Expr.Literal || expr instanceof Expr.Variable) return true;
+        if (expr instanceof Expr.Binary binary) return isPure(binary.left) && isPure(binary.right);
+        if (expr instanceof Expr.Unary unary) return isPure(unary.right);
+        return false;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition, true)) return optimize(stmt.thenBranch);
+        if (isLiteral(condition, false)) {
+            return stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        }
+
+        Stmt thenBranch = optimize(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        return new Stmt.If(condition, thenBranch != null ? thenBranch : emptyBlock(), elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(stmt.keyword, optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitScanStmt(Stmt.Scan stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = stmt.initializer != null ? optimize(stmt.initializer) : null;
+        Stmt.Var var = new Stmt.Var(stmt.name, initializer, stmt.type);
+        var.slot = stmt.slot;
+        return var;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition, false)) return null;
+
+        Stmt body = optimize(stmt.body);
+        return new Stmt.While(stmt.keyword, condition, body != null ? body : emptyBlock());
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr.Assign assign = new Expr.Assign(expr.name, optimize(expr.value));
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        assign.type = expr.type;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        if (expr instanceof SpecializingExpr.Concatenation chain) return concatenation(chain);
+
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        Expr binary = left == expr.left && right == expr.right ? expr
+                : retype(new Expr.Binary(left, expr.operator, right));
+
+        return isLiteral(left) && isLiteral(right) ? fold(binary) : binary;
+    }
+
+    // Each run of neighbouring literals in an '&' chain is joined here,
+    // once. A NIL literal is left for the run time error it causes.
+    private Expr concatenation(SpecializingExpr.Concatenation expr) {
+        Expr[] optimized = new Expr[expr.operands.length];
+        boolean changed = false;
+        for (int i = 0; i < optimized.length; i++) {
+            optimized[i] = optimize(expr.operands[i]);
+            changed |= optimized[i] != expr.operands[i];
+        }
+
+        List<Expr> operands = new ArrayList<>();
+        List<Token> operators = new ArrayList<>();
+        int i = 0;
+        while (i < optimized.length) {
+            int end = i + 1;
+            while (end < optimized.length && isJoinable(optimized[i]) && isJoinable(optimized[end])) end++;
+            if (i > 0) operators.add(expr.operators[i - 1]);
+            if (end - i > 1) {
+                operands.add(fold(new SpecializingExpr.Concatenation(
+                        Arrays.copyOfRange(optimized, i, end), Arrays.copyOfRange(expr.operators, i, end - 1))));
+                changed = true;
+            } else {
+                operands.add(optimized[i]);
+            }
+            i = end;
+        }
+
+        if (!changed) return expr;
+        if (operands.size() == 1) return operands.get(0);
+        return new SpecializingExpr.Concatenation(operands.toArray(new Expr[0]), operators.toArray(new Token[0]));
+    }
+
+    private static boolean isJoinable(Expr expr) {
+        return expr instanceof Expr.Literal literal && literal.value != null;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        boolean or = expr.operator.type == OR;
+
+        // The right side never runs, or decides the result on its own.
+        if (isLiteral(left, or)) return left;
+        if (isLiteral(left, !or)) return right;
+
+        if (left == expr.left && right == expr.right) return expr;
+        return retype(new Expr.Logical(left, expr.operator, right));
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        Expr unary = right == expr.right ? expr : retype(new Expr.Unary(expr.operator, right));
+        return isLiteral(right) ? fold(unary) : unary;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+}
@@ -0,0 +1,212 @@
+package code;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+// Where DISPLAY writes. Lines are encoded into one large byte buffer and
+// handed to the back end in bulk, so printing a line is a copy rather than
+// a synchronized write and flush. The buffer is emptied when it passes the
+// flush threshold, before every SCAN unless that is turned off (so prompts
+// show up before the program blocks), and when the program ends.
+abstract class Output {
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private byte[] buffer = new byte[DEFAULT_CAPACITY];
+    private int position = 0;
+    // Bytes that have left the buffer.
+    private long sent = 0;
+    private int flushEvery = DEFAULT_CAPACITY;
+    private boolean flushOnScan = true;
+
+    // Empties the buffer once it holds at least this many bytes.
+    Output flushEvery(int bytes) {
+        if (bytes <= 0) throw new IllegalArgumentException("Flush threshold must be positive.");
+        flushEvery = bytes;
+        if (buffer.length < bytes) buffer = new byte[bytes];
+        return this;
+    }
+
+    Output flushOnScan(boolean flushOnScan) {
+        this.flushOnScan = flushOnScan;
+        return this;
+    }
+
+    void println(String text) {
+        int length = text.length();
+        if (position + length > buffer.length) drain();
+
+        if (length <= buffer.length && isAscii(text)) {
+            // ASCII is by far the common case and needs no encoder.
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) text.charAt(i);
+            }
+        } else {
+            write(text.getBytes(CHARSET));
+        }
+        write(NEWLINE);
+    }
+
+    // Called right before the program reads input.
+    void beforeScan() {
+        if (flushOnScan) flush();
+    }
+
+    void flush() {
+        drain();
+        try {
+            sync();
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    void close() {
+        drain();
+        try {
+            release();
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    private void write(byte[] bytes) {
+        if (position + bytes.length > buffer.length) drain();
+        if (bytes.length > buffer.length) {
+            emit(bytes, 0, bytes.length);
+            return;
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        if (position >= flushEvery) flush();
+    }
+
+    private void drain() {
+        if (position == 0) return;
+        emit(buffer, 0, position);
+        position = 0;
+    }
+
+    // Every byte displayed so far, whether or not it has been flushed.
+    long bytes() {
+        return sent + position;
+    }
+
+    private void emit(byte[] bytes, int offset, int length) {
+        sent += length;
+        try {
+            send(bytes, offset, length);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    // Hands a run of encoded bytes to the back end.
+    abstract void send(byte[] bytes, int offset, int length) throws IOException;
+
+    // Pushes anything the back end itself buffered out to its destination.
+    void sync() throws IOException {}
+
+    void release() throws IOException {
+        sync();
+    }
+
+    static Output stream(OutputStream out) {
+        return new Stream(out);
+    }
+
+    static Output channel(Path path) throws IOException {
+        return new Channel(FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING));
+    }
+
+    static Output mapped(Path path) throws IOException {
+        return new Mapped(FileChannel.open(path, CREATE, READ, WRITE, TRUNCATE_EXISTING));
+    }
+
+    static class Stream extends Output {
+        private final OutputStream out;
+
+        Stream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        void send(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        void sync() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        void release() throws IOException {
+            // Never close the process's own stdout.
+            if (out instanceof PrintStream) out.flush();
+            else out.close();
+        }
+    }
+
+    static class Channel extends Output {
+        private final FileChannel channel;
+
+        Channel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        void send(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer source = ByteBuffer.wrap(bytes, offset, length);
+            while (source.hasRemaining()) channel.write(source);
+        }
+
+        @Override
+        void release() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Writes into the file through a mapping of each run of bytes as it
+    // arrives. Mapping only as far as the data reaches grows the file with
+    // it, so nothing is ever cut back: truncating a file that is still
+    // mapped fails on Windows, and a run that dies leaves no padding.
+    static class Mapped extends Output {
+        private final FileChannel channel;
+        private long size = 0;
+
+        Mapped(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        void send(byte[] bytes, int offset, int length) throws IOException {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, size, length);
+            region.put(bytes, offset, length);
+            size += length;
+        }
+
+        @Override
+        void release() throws IOException {
+            channel.close();
+        }
+    }
+}
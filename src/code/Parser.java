@@ -1,7 +1,6 @@
 package code;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -10,11 +9,16 @@ import static code.TokenType.*;
 class Parser {
     private static class ParseError extends RuntimeException {}
 
-    private final List<Token> tokens;
-    private int current = 0;
+    private final TokenStream tokens;
+    private final Reporter reporter;
 
-    Parser(List<Token> tokens) {
+    Parser(List<Token> tokens, Reporter reporter) {
+        this(TokenStream.of(tokens), reporter);
+    }
+
+    Parser(TokenStream tokens, Reporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
     }
 
     List<Stmt> parse() {
@@ -67,6 +71,7 @@ class Parser {
     }
 
     private Stmt forStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
         List<Stmt> list_initializer;
@@ -96,21 +101,8 @@ class Parser {
         consume(RIGHT_PAREN, "Expect ')' after for clauses.");
         Stmt body = for_block_statement();
 
-        if (increment != null) {
-            body = new Stmt.Block(
-                    Arrays.asList(
-                            body,
-                            new Stmt.Expression(increment)));
-        }
-
         if (condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
-
-        if (initializer != null) {
-            body = new Stmt.Block(Arrays.asList(initializer, body));
-        }
-
-        return body;
+        return new Stmt.For(keyword, initializer, condition, increment, body);
     }
 
     private Stmt for_block_statement() {
@@ -149,17 +141,18 @@ class Parser {
     }
 
     private Stmt printStatement() {
+        Token keyword = previous();
         consume(COLON, "Expect ':' after DISPLAY keyword");
         Expr value = expression();
         //consume(SEMICOLON, "Expect ';' after value.");
-        return new Stmt.Print(value);
+        return new Stmt.Print(keyword, value);
     }
 
     private Stmt scanStatement() {
         consume(COLON, "Expect ':' after SCAN keyword");
-        List<Token> variables = new ArrayList<>();
+        List<Expr.Variable> variables = new ArrayList<>();
         do {
-            variables.add(consume(IDENTIFIER, "Expect variable name."));
+            variables.add(new Expr.Variable(consume(IDENTIFIER, "Expect variable name.")));
         } while (match(COMMA));
 
         return new Stmt.Scan(variables);
@@ -233,6 +226,7 @@ class Parser {
     }
 
     private Stmt whileStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
         Expr condition = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
@@ -242,7 +236,7 @@ class Parser {
         }
         Stmt body = while_block_statement();
 
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
     }
 
     private Stmt expressionStatement() {
@@ -436,7 +430,7 @@ class Parser {
     private boolean match(TokenType... types) {
         for (TokenType type : types) {
             if (check(type)) {
-                advance();
+                tokens.advance();
                 return true;
             }
         }
@@ -452,50 +446,46 @@ class Parser {
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        tokens.advance();
         return previous();
     }
 
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.peekType() == EOF;
     }
 
     private boolean isAtEndCode() {
-        return peek().type == END_CODE;
+        return tokens.peekType() == END_CODE;
     }
 
     private Token peek() {
-        return tokens.get(current);
-    }
-
-    private Token peekNext() {
-        return tokens.get((current + 1));
+        return tokens.peek();
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
     private ParseError error(Token token, String message) {
-        Code.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
     private void synchronize() {
-        advance();
+        tokens.advance();
 
         while (!isAtEnd()) {
-            switch (peek().type) {
+            switch (tokens.peekType()) {
                 case FUN, INT, CHAR, STRING, BOOL, FLOAT, WHILE, IF, DISPLAY, SCAN, RETURN -> {
                     return;
                 }
             }
 
-            advance();
+            tokens.advance();
         }
     }
 }
\ No newline at end of file
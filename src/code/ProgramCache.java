@@ -0,0 +1,143 @@
+package code;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Parsed programs kept on disk between runs. An entry is named after the
+// SHA-256 of the cache format version and the source bytes, so an edited
+// source or a new format simply misses, and the stale entry ages out. A
+// hit costs one mapped read and skips the Scanner and Parser entirely;
+// anything wrong with an entry deletes it and falls back to parsing. When
+// the directory grows past its limit the least recently used entries are
+// removed first.
+class ProgramCache {
+    // Bump whenever AstCodec's format or what the Parser builds changes.
+    static final int VERSION = 3;
+    static final long DEFAULT_LIMIT = 64L << 20;
+
+    private static final int MAGIC = 0x434F4445; // "CODE"
+    private static final String SUFFIX = ".ast";
+
+    private final Path directory;
+    private final long limit;
+
+    ProgramCache(Path directory, long limit) {
+        this.directory = directory;
+        this.limit = limit;
+    }
+
+    // The entry for a source file. Hashing reads the file through a
+    // mapping; its contents are not otherwise loaded.
+    Entry entry(Path source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException(error);
+        }
+
+        digest.update(ByteBuffer.allocate(4).putInt(0, VERSION));
+        try (FileChannel channel = FileChannel.open(source)) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        return new Entry(digest.digest());
+    }
+
+    class Entry {
+        private final byte[] key;
+        private final Path file;
+
+        private Entry(byte[] key) {
+            this.key = key;
+            StringBuilder name = new StringBuilder();
+            for (byte b : key) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            this.file = directory.resolve(name + SUFFIX);
+        }
+
+        // The cached program, or null on a miss.
+        List<Stmt> load(SymbolTable symbols) {
+            if (!Files.isRegularFile(file)) return null;
+
+            try (FileChannel channel = FileChannel.open(file)) {
+                ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (in.getInt() != MAGIC || in.getInt() != VERSION) throw new IllegalStateException("Bad header.");
+                byte[] stored = new byte[key.length];
+                in.get(stored);
+                if (!MessageDigest.isEqual(stored, key)) throw new IllegalStateException("Key mismatch.");
+
+                List<Stmt> statements = AstCodec.decode(in, symbols);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                return statements;
+            } catch (IOException | RuntimeException error) {
+                // Unreadable or from another format: drop it and parse again.
+                delete(file);
+                return null;
+            }
+        }
+
+        // Best effort: a program runs the same whether or not it was cached.
+        void store(List<Stmt> statements) {
+            try {
+                Files.createDirectories(directory);
+                byte[] body = AstCodec.encode(statements);
+                ByteBuffer out = ByteBuffer.allocate(8 + key.length + body.length);
+                out.putInt(MAGIC).putInt(VERSION).put(key).put(body);
+
+                // Written aside and renamed so a concurrent run never maps half a file.
+                Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+                Files.write(temporary, out.array());
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                evict();
+            } catch (IOException | RuntimeException error) {
+                // Leave the cache as it was.
+            }
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : files) {
+                entries.add(entry);
+                total += Files.size(entry);
+            }
+        }
+        if (total <= limit) return;
+
+        entries.sort((a, b) -> lastUsed(a).compareTo(lastUsed(b)));
+        for (Path entry : entries) {
+            if (total <= limit) break;
+            long size = Files.size(entry);
+            if (delete(entry)) total -= size;
+        }
+    }
+
+    private static FileTime lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException error) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static boolean delete(Path entry) {
+        try {
+            return Files.deleteIfExists(entry);
+        } catch (IOException error) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package code;
+
+import java.io.PrintStream;
+
+// The errors of one run and where they are printed. Every stage of a run
+// reports through the same Reporter, and each run has its own, so
+// programs running side by side never see each other's errors.
+class Reporter {
+    private final PrintStream err;
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+
+    Reporter(PrintStream err) {
+        this.err = err;
+    }
+
+    PrintStream err() {
+        return err;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    void runtimeError(RuntimeError error) {
+        err.println(error.getMessage() +
+                "\n[line " + error.token.line + "]");
+        hadRuntimeError = true;
+    }
+
+    private void report(int line, String where,
+                        String message) {
+        err.println(
+                "[line " + line + "] Error" + where + ": " + message);
+        hadError = true;
+    }
+}
@@ -0,0 +1,248 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // Indexed by symbol: the innermost open scope declaring it (-1 if none)
+    // and its slot there. Outlives a single run so the prompt can keep
+    // using earlier globals.
+    private int[] scopeOf = new int[0];
+    private int[] slotOf = new int[0];
+    // Per open scope, what each declaration shadowed, as (symbol, scope,
+    // slot) triples to put back when the scope ends.
+    private final List<int[]> shadowed = new ArrayList<>();
+    private final List<List<TokenType>> layouts = new ArrayList<>();
+    private final Reporter reporter;
+
+    Resolver(Reporter reporter) {
+        this.reporter = reporter;
+        shadowed.add(new int[0]);
+        layouts.add(new ArrayList<>());
+    }
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    int globalCount() {
+        return layouts.get(0).size();
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope() {
+        shadowed.add(new int[0]);
+        layouts.add(new ArrayList<>());
+    }
+
+    private TokenType[] endScope() {
+        int[] restore = shadowed.remove(shadowed.size() - 1);
+        for (int i = 0; i < restore.length; i += 3) {
+            scopeOf[restore[i]] = restore[i + 1];
+            slotOf[restore[i]] = restore[i + 2];
+        }
+        return layouts.remove(layouts.size() - 1).toArray(new TokenType[0]);
+    }
+
+    private int declare(Token name, TokenType type) {
+        int symbol = name.symbol;
+        int scope = layouts.size() - 1;
+        track(symbol);
+        if (scopeOf[symbol] == scope) {
+            reporter.error(name, "Variable " + "'" + name.lexeme + "'" + " already exists!");
+            return slotOf[symbol];
+        }
+
+        if (scope > 0) {
+            int[] restore = shadowed.get(scope);
+            restore = Arrays.copyOf(restore, restore.length + 3);
+            restore[restore.length - 3] = symbol;
+            restore[restore.length - 2] = scopeOf[symbol];
+            restore[restore.length - 1] = slotOf[symbol];
+            shadowed.set(scope, restore);
+        }
+
+        List<TokenType> layout = layouts.get(scope);
+        int slot = layout.size();
+        scopeOf[symbol] = scope;
+        slotOf[symbol] = slot;
+        layout.add(type);
+        return slot;
+    }
+
+    private void track(int symbol) {
+        if (symbol < scopeOf.length) return;
+        int length = scopeOf.length;
+        int capacity = Math.max(symbol + 1, length * 2);
+        scopeOf = Arrays.copyOf(scopeOf, capacity);
+        slotOf = Arrays.copyOf(slotOf, capacity);
+        Arrays.fill(scopeOf, length, capacity, -1);
+    }
+
+    private int resolveDepth(Token name) {
+        track(name.symbol);
+        int scope = scopeOf[name.symbol];
+        if (scope >= 0) {
+            return layouts.size() - 1 - scope;
+        }
+
+        reporter.error(name, "Undefined variable '" + name.lexeme + "'.");
+        return -1;
+    }
+
+    private int resolveSlot(Token name, int depth) {
+        if (depth < 0) return -1;
+        return slotOf[name.symbol];
+    }
+
+    private TokenType typeOf(int depth, int slot) {
+        if (depth < 0) return null;
+        return layouts.get(layouts.size() - 1 - depth).get(slot);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        // A block that declares nothing gets no scope, so running it
+        // allocates nothing; its variables are all someone else's.
+        if (stmt.statements.stream().noneMatch(statement -> statement instanceof Stmt.Var)) {
+            resolve(stmt.statements);
+            return null;
+        }
+
+        beginScope();
+        resolve(stmt.statements);
+        stmt.layout = endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        boolean scoped = stmt.initializer instanceof Stmt.Var;
+        if (scoped) beginScope();
+        if (stmt.initializer != null) resolve(stmt.initializer);
+        resolve(stmt.condition);
+        if (stmt.increment != null) resolve(stmt.increment);
+        resolve(stmt.body);
+        if (scoped) stmt.layout = endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        if (stmt.elseBranch != null) resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitScanStmt(Stmt.Scan stmt) {
+        for (Expr.Variable variable : stmt.variables) {
+            resolve(variable);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // The initializer still sees any outer variable with the same name.
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        stmt.slot = declare(stmt.name, stmt.type);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+        expr.depth = resolveDepth(expr.name);
+        expr.slot = resolveSlot(expr.name, expr.depth);
+        expr.type = typeOf(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        if (expr.operator.type != TokenType.AMPERSAND) {
+            resolve(expr.left);
+            resolve(expr.right);
+            return null;
+        }
+
+        // An '&' chain nests down the left side; walk it in a loop, as the
+        // TypeChecker does, so a long one costs no stack frame per operand.
+        List<Expr> rights = new ArrayList<>();
+        Expr first = expr;
+        while (first instanceof Expr.Binary binary && binary.operator.type == TokenType.AMPERSAND) {
+            rights.add(binary.right);
+            first = binary.left;
+        }
+        resolve(first);
+        for (int i = rights.size() - 1; i >= 0; i--) {
+            resolve(rights.get(i));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        expr.depth = resolveDepth(expr.name);
+        expr.slot = resolveSlot(expr.name, expr.depth);
+        expr.type = typeOf(expr.depth, expr.slot);
+        return null;
+    }
+}
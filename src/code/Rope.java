@@ -0,0 +1,118 @@
+package code;
+
+import java.util.ArrayDeque;
+
+// A STRING value built by '&'. Joining two pieces of text only links them;
+// the characters are copied once, in a single right-to-left pass over the
+// whole tree, the first time the text is displayed or compared, and the
+// result is kept. Appending to a variable in a loop is then linear instead
+// of copying the whole string on every iteration.
+final class Rope implements CharSequence {
+    // Below this, copying is cheaper than another node.
+    private static final int SHORT = 32;
+
+    private CharSequence left;
+    private CharSequence right;
+    private final int length;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+    }
+
+    static CharSequence join(CharSequence left, CharSequence right) {
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+        if (left.length() + right.length() <= SHORT) {
+            return left.toString().concat(right.toString());
+        }
+        return new Rope(left, right);
+    }
+
+    // Joins the pieces of one '&' chain in a single pass. Runs of short
+    // pieces are copied into one builder; a long piece is only linked, as
+    // above.
+    static CharSequence join(CharSequence[] pieces) {
+        CharSequence joined = "";
+        StringBuilder run = null;
+        for (CharSequence piece : pieces) {
+            if (piece.length() > SHORT) {
+                if (run != null && run.length() > 0) {
+                    joined = join(joined, run.toString());
+                    run.setLength(0);
+                }
+                joined = join(joined, piece);
+            } else {
+                if (run == null) run = new StringBuilder();
+                run.append(piece);
+            }
+        }
+        if (run != null && run.length() > 0) joined = join(joined, run.toString());
+        return joined;
+    }
+
+    static boolean isText(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    // The String form of a STRING value, which may be NIL.
+    static Object flatten(Object value) {
+        return value instanceof Rope rope ? rope.toString() : value;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat != null) return flat;
+
+        char[] chars = new char[length];
+        int end = length;
+        // An explicit stack, because a loop appending to one variable
+        // builds a tree as deep as the number of iterations.
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence piece = pending.pop();
+            if (piece instanceof Rope rope && rope.flat == null) {
+                pending.push(rope.left);
+                pending.push(rope.right);
+                continue;
+            }
+
+            String text = piece.toString();
+            end -= text.length();
+            text.getChars(0, text.length(), chars, end);
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Rope rope && toString().equals(rope.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
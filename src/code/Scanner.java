@@ -8,8 +8,11 @@ import java.util.Map;
 import static code.TokenType.*;
 
 class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final CharSequence source;
+    private final SymbolTable symbols;
+    private final Reporter reporter;
+    private Token scanned;
+    private TokenBuffer buffer;
     private int start = 0;
     private int current = 0;
     private int line = 1;
@@ -40,19 +43,56 @@ class Scanner {
         keywords.put("VAR",     VAR);
     }
 
-    Scanner(String source) {
+    private static final KeywordTable keywordTable = new KeywordTable(keywords);
+
+    private static final char[] BEGIN = "BEGIN".toCharArray();
+    private static final char[] END = "END".toCharArray();
+    private static final char[] CODE = "CODE".toCharArray();
+    private static final char[] IF_WORD = "IF".toCharArray();
+    private static final char[] WHILE_WORD = "WHILE".toCharArray();
+    private static final char[] FOR_WORD = "FOR".toCharArray();
+
+    Scanner(CharSequence source, SymbolTable symbols, Reporter reporter) {
         this.source = source;
+        this.symbols = symbols;
+        this.reporter = reporter;
     }
 
     List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != EOF);
+        return tokens;
+    }
+
+    // Scans the whole source into columns without creating a Token or,
+    // except for string literals with escapes, a literal value per token.
+    TokenBuffer scanBuffer() {
+        buffer = new TokenBuffer(source, symbols);
         while (!isAtEnd()) {
             // We are at the beginning of the next lexeme.
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        buffer.add(EOF, current, 0, line, null, -1);
+        return buffer;
+    }
+
+    // Scans just far enough to produce one more token; EOF once the source
+    // runs out.
+    Token nextToken() {
+        scanned = null;
+        while (scanned == null && !isAtEnd()) {
+            // We are at the beginning of the next lexeme.
+            start = current;
+            scanToken();
+        }
+
+        return scanned != null ? scanned : new Token(EOF, "", null, line);
     }
 
     private void scanToken() {
@@ -110,7 +150,7 @@ class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Code.error(line, "Unexpected character.");
+                    reporter.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -119,58 +159,43 @@ class Scanner {
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        String text = source.substring(start, current);
-
-        // Check for multi-word constructs
-        if (text.equals("BEGIN") || text.equals("END")) {
-            // Peek ahead to see if the next characters form one of the constructs
+        // Check for multi-word constructs: BEGIN or END, one space, the
+        // block's word, and nothing after it but spaces up to the end of
+        // the run of letters and spaces.
+        boolean begin = KeywordTable.matches(source, start, current, BEGIN);
+        if (begin || KeywordTable.matches(source, start, current, END)) {
             int lookahead = current;
             while (lookahead < source.length() && (isAlpha(source.charAt(lookahead)) || source.charAt(lookahead) == ' ')) {
                 lookahead++;
             }
-            String potentialConstruct = source.substring(start, lookahead).trim();
-            switch (potentialConstruct) {
-                case "BEGIN CODE":
+            int wordEnd = lookahead;
+            while (wordEnd > current && source.charAt(wordEnd - 1) == ' ') wordEnd--;
+
+            if (wordEnd > current + 1 && source.charAt(current) == ' ') {
+                TokenType construct = blockKeyword(begin, current + 1, wordEnd);
+                if (construct != null) {
                     current = lookahead; // Update current to skip the entire construct
-                    addToken(BEGIN_CODE);
-                    return;
-                case "END CODE":
-                    current = lookahead;
-                    addToken(END_CODE);
-                    return;
-                case "BEGIN FOR":
-                    current = lookahead;
-                    addToken(BEGIN_FOR);
-                    return;
-                case "END FOR":
-                    current = lookahead;
-                    addToken(END_FOR);
-                    return;
-                case "BEGIN IF":
-                    current = lookahead;
-                    addToken(BEGIN_IF);
-                    return;
-                case "END IF":
-                    current = lookahead;
-                    addToken(END_IF);
-                    return;
-                case "BEGIN WHILE":
-                    current = lookahead;
-                    addToken(BEGIN_WHILE);
-                    return;
-                case "END WHILE":
-                    current = lookahead;
-                    addToken(END_WHILE);
+                    addToken(construct);
                     return;
+                }
             }
         }
 
         // Fallback to single-word keywords or identifiers
-        TokenType type = keywords.getOrDefault(text, IDENTIFIER);
-        //if (type == IDENTIFIER && text.equals(text.toUpperCase())) {
-        //    Code.error(line, text + " is not a recognized keyword.");
-        //}
-        addToken(type);
+        TokenType type = keywordTable.lookup(source, start, current);
+        if (type == IDENTIFIER) {
+            addToken(IDENTIFIER, null, symbols.intern(source, start, current));
+        } else {
+            addToken(type);
+        }
+    }
+
+    private TokenType blockKeyword(boolean begin, int from, int to) {
+        if (KeywordTable.matches(source, from, to, CODE)) return begin ? BEGIN_CODE : END_CODE;
+        if (KeywordTable.matches(source, from, to, IF_WORD)) return begin ? BEGIN_IF : END_IF;
+        if (KeywordTable.matches(source, from, to, WHILE_WORD)) return begin ? BEGIN_WHILE : END_WHILE;
+        if (KeywordTable.matches(source, from, to, FOR_WORD)) return begin ? BEGIN_FOR : END_FOR;
+        return null;
     }
 
     private void number() {
@@ -187,20 +212,34 @@ class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        if (isFloat) {
-            addToken(FLOAT_LITERAL, Double.parseDouble(source.substring(start, current)));
+        if (buffer != null) {
+            // The buffer parses the lexeme if the parser ever needs the value.
+            addToken(isFloat ? FLOAT_LITERAL : INT_LITERAL);
+        } else if (isFloat) {
+            addToken(FLOAT_LITERAL, Double.parseDouble(text(start, current)));
         } else {
-            addToken(INT_LITERAL, Integer.parseInt(source.substring(start, current)));
+            addToken(INT_LITERAL, Integer.parseInt(text(start, current)));
         }
     }
 
     private void string() {
-        StringBuilder value = new StringBuilder();
         if (peek() == '#') {
-            Code.error(line,
+            reporter.error(line,
             "No escape sequence detected. To print '#', it should be surrounded with square braces (ex. [#]).");
         }
+
+        // Plain text is taken from the source a run at a time, so a literal
+        // with no escapes is a single slice.
+        StringBuilder value = null;
+        int run = current;
         while (peek() != '"' && !isAtEnd()) {
+            if (isPlain(peek())) {
+                advance();
+                continue;
+            }
+
+            if (value == null) value = new StringBuilder();
+            value.append(text(run, current));
             if (peek() == '\n') {
                 line++;
             } else if (peek() == '[') {
@@ -229,47 +268,60 @@ class Scanner {
                         value.append('[');
                         break; // For escaping opening square brace
                     default:
-                        Code.error(line, "Invalid escape sequence.");
+                        reporter.error(line, "Invalid escape sequence.");
                 }
                 advance(); // Move past the character after '['
                 if (peek() != ']') {
-                    Code.error(line, "Unterminated escape sequence.");
+                    reporter.error(line, "Unterminated escape sequence.");
                 }
             } else if (peek() == '$') {
                 value.append('\n');
             } else if (peek() == '#') {
-                Code.error(line, "No escape sequence detected. To print '#', it should be surrounded with square braces (ex. [#]).");
+                reporter.error(line, "No escape sequence detected. To print '#', it should be surrounded with square braces (ex. [#]).");
             } else if (peek() == '&') {
-                Code.error(line, "No escape sequence detected. To print '&', it should be surrounded with square braces (ex. [&]).");
+                reporter.error(line, "No escape sequence detected. To print '&', it should be surrounded with square braces (ex. [&]).");
             } else if (peek() == '\'') {
-                Code.error(line, "No escape sequence detected. To print a single quote, it should be surrounded with square braces (ex. [']).");
-            } else if (peek() == '"') {
-                Code.error(line, "No escape sequence detected. To print a double quote, it should be surrounded with square braces (ex. [\"]).");
+                reporter.error(line, "No escape sequence detected. To print a single quote, it should be surrounded with square braces (ex. [']).");
             } else if (peek() == '[') {
-                Code.error(line, "No escape sequence detected. To print a square brace, it should be surrounded with square braces (ex. [[]).");
+                reporter.error(line, "No escape sequence detected. To print a square brace, it should be surrounded with square braces (ex. [[]).");
             } else if (peek() == ']') {
-                Code.error(line, "No escape sequence detected. To print a closing square brace, it should be surrounded with square braces (ex. []]).");
-            } else {
-                value.append(peek());
+                reporter.error(line, "No escape sequence detected. To print a closing square brace, it should be surrounded with square braces (ex. []]).");
             }
             advance();
+            run = current;
         }
 
         if (isAtEnd()) {
-            Code.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
+        String literal;
+        if (value != null) {
+            literal = value.append(text(run, current)).toString();
+        } else {
+            // Without escapes the value is just the source between the quotes.
+            literal = buffer != null ? null : text(run, current);
+        }
+
         // Skip the closing "
         advance();
 
-        // No need to trim quotes as we built the value manually
-        addToken(STRING_LITERAL, value.toString());
+        addToken(STRING_LITERAL, literal);
+    }
+
+    private static boolean isPlain(char c) {
+        switch (c) {
+            case '\n': case '[': case ']': case '$': case '#': case '&': case '\'':
+                return false;
+            default:
+                return true;
+        }
     }
 
     private void character() {
         if (isAtEnd()) {
-            Code.error(line, "Unterminated character literal.");
+            reporter.error(line, "Unterminated character literal.");
             return;
         }
 
@@ -293,23 +345,34 @@ class Scanner {
                 case '[':
                     value = '['; break; // For escaping opening square brace
                 default:
-                    Code.error(line, "Invalid escape sequence in character literal.");
+                    reporter.error(line, "Invalid escape sequence in character literal.");
                     return;
             }
             advance(); // Move past the character after '['
 
             if (peek() != ']') {
-                Code.error(line, "Unterminated escape sequence in character literal.");
+                reporter.error(line, "Unterminated escape sequence in character literal.");
                 return;
             }
             advance(); // Consume closing ']'
+        } else if (peek() > 0x7F && source instanceof MappedSource) {
+            // A mapped file hands over raw bytes; decode the ones up to the
+            // quote the way string() decodes its slices.
+            int start = current;
+            while (peek() > 0x7F) advance();
+            String decoded = text(start, current);
+            if (decoded.length() != 1) {
+                reporter.error(line, "Character literal too long or not properly closed.");
+                return;
+            }
+            value = decoded.charAt(0);
         } else {
             value = peek(); // Regular character
             advance(); // Consume character
         }
 
         if (peek() != '\'') {   
-            Code.error(line, "Character literal too long or not properly closed.");
+            reporter.error(line, "Character literal too long or not properly closed.");
             return;
         }
         advance(); // Consume closing single quote
@@ -343,12 +406,12 @@ class Scanner {
                 value.append('[');
                 break; // For escaping opening square brace
             default:
-                Code.error(line, "Invalid escape sequence.");
+                reporter.error(line, "Invalid escape sequence.");
                 return;
         }
         advance(); // Move past the character after '['
         if (peek() != ']') {
-            Code.error(line, "Unterminated escape sequence.");
+            reporter.error(line, "Unterminated escape sequence.");
             return;
         }
 
@@ -381,6 +444,10 @@ class Scanner {
         return source.charAt(current - 1);
     }
 
+    private String text(int from, int to) {
+        return source.subSequence(from, to).toString();
+    }
+
     private boolean isAlpha(char c) {
         return (c >= 'a' && c <= 'z') ||
                 (c >= 'A' && c <= 'Z') ||
@@ -408,7 +475,15 @@ class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        addToken(type, literal, -1);
+    }
+
+    private void addToken(TokenType type, Object literal, int symbol) {
+        if (buffer != null) {
+            buffer.add(type, start, current - start, line, literal, symbol);
+            return;
+        }
+        String lexeme = symbol >= 0 ? symbols.name(symbol) : text(start, current);
+        scanned = new Token(type, lexeme, literal, line, symbol);
     }
 }
@@ -0,0 +1,245 @@
+package code;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs submitted programs over HTTP on the loopback interface, all in this
+// JVM. A submission is a POST to /run whose body is the program followed
+// by its input; a Source-Length header gives the program's size in bytes,
+// and without one the whole body is the program. The response streams
+// what the program displays, then any error text, and always ends with a
+// line "exit: <status>": 0, 65 or 70 as on the command line, 1 when the
+// interpreter itself failed, or 124 when the deadline passed first.
+//
+// The body is read in full before a program starts, so SCAN never waits
+// on the network and a run only ever needs a CPU. Runs therefore go to a
+// pool of workers with a bounded queue in front. A submission takes its
+// place in that queue before its body is read; when there is none it is
+// turned away with 503 and Retry-After, having cost nothing but a handler
+// thread for a moment. Handlers are a fixed pool too, so a flood of
+// connections waits for them rather than starting threads without end.
+// The deadline counts from admission and is enforced by interrupting the
+// worker, which the Interpreter checks at its loop safepoints.
+//
+// GET /metrics lists what every run so far has done, as the MXBean
+// code:type=Metrics also does.
+class Server {
+    static final int DEFAULT_PORT = 8080;
+    static final int DEFAULT_QUEUE = 1024;
+    static final long DEFAULT_DEADLINE = 10_000;
+    private static final int MAX_BODY = 8 << 20;
+    private static final int TIMED_OUT = 124;
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final ThreadPoolExecutor runs;
+    // One permit per place a run can be, running or queued.
+    private final Semaphore admissions;
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor();
+    private final long deadline;
+    private final Limits limits;
+    // Names submissions in Flight Recorder events.
+    private final AtomicLong submissions = new AtomicLong();
+
+    private Server(int workers, int queue, long deadline, Limits limits) {
+        this.runs = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue));
+        this.admissions = new Semaphore(workers + queue);
+        this.deadline = deadline;
+        this.limits = limits;
+    }
+
+    static void serve(int port, int workers, int queue, long deadline, Limits limits) throws IOException {
+        Server server = new Server(workers, queue, deadline, limits);
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/run", server::handle);
+        http.createContext("/metrics", Server::metrics);
+        Metrics.register();
+        // Handlers only read a body and queue it; twice as many as there are
+        // workers keeps the queue fed while a few clients are slow to send.
+        http.setExecutor(Executors.newFixedThreadPool(2 * workers));
+        http.start();
+        System.err.println("Serving on " + http.getAddress());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            reject(exchange, 405, "POST a program to /run.");
+            return;
+        }
+
+        if (!admissions.tryAcquire()) {
+            busy(exchange);
+            return;
+        }
+
+        boolean queued = false;
+        try {
+            queued = admit(exchange);
+        } finally {
+            if (!queued) admissions.release();
+        }
+    }
+
+    // Reads and checks the body of an admitted submission and queues its
+    // run, or answers with why it cannot run.
+    private boolean admit(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(MAX_BODY + 1);
+        }
+        if (body.length > MAX_BODY) {
+            reject(exchange, 413, "Submissions are limited to " + MAX_BODY + " bytes.");
+            return false;
+        }
+
+        int sourceLength = body.length;
+        String header = exchange.getRequestHeaders().getFirst("Source-Length");
+        if (header != null) {
+            try {
+                sourceLength = Integer.parseInt(header.trim());
+            } catch (NumberFormatException error) {
+                sourceLength = -1;
+            }
+            if (sourceLength < 0 || sourceLength > body.length) {
+                reject(exchange, 400, "Source-Length must be between 0 and the body's length.");
+                return false;
+            }
+        }
+
+        long admitted = System.nanoTime();
+        int length = sourceLength;
+        try {
+            runs.execute(() -> {
+                try {
+                    run(exchange, body, length, admitted);
+                } finally {
+                    admissions.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException error) {
+            busy(exchange);
+            return false;
+        }
+    }
+
+    private static void busy(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        reject(exchange, 503, "Too many submissions waiting; try again shortly.");
+    }
+
+    // The counters of every run so far, as text; they are also an MXBean.
+    private static void metrics(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            reject(exchange, 405, "GET /metrics.");
+            return;
+        }
+        byte[] bytes = Metrics.text().getBytes(CHARSET);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=" + CHARSET.name());
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void run(HttpExchange exchange, byte[] body, int sourceLength, long admitted) {
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, 0);
+            long remaining = deadline - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - admitted);
+            String errors = "";
+            int status;
+
+            if (remaining <= 0) {
+                errors = "Time limit exceeded.";
+                status = TIMED_OUT;
+            } else {
+                Deadline timer = new Deadline(Thread.currentThread());
+                timer.schedule(remaining);
+                try {
+                    CompiledProgram program = CodeEngine.compile(new String(body, 0, sourceLength, CHARSET),
+                            "submission-" + submissions.incrementAndGet());
+                    try {
+                        program.run(new ByteArrayInputStream(body, sourceLength, body.length - sourceLength), out, limits);
+                        status = 0;
+                    } catch (CodeException error) {
+                        errors = error.getMessage();
+                        status = 70;
+                    }
+                } catch (CodeException error) {
+                    errors = error.getMessage();
+                    status = 65;
+                } catch (CancellationException error) {
+                    errors = error.getMessage();
+                    status = TIMED_OUT;
+                } catch (RuntimeException | StackOverflowError error) {
+                    // What would have ended a single run ends only this submission.
+                    error.printStackTrace();
+                    errors = "Internal error: " + error;
+                    status = 1;
+                } finally {
+                    timer.finish();
+                }
+            }
+
+            if (!errors.isEmpty()) errors += "\n";
+            out.write((errors + "exit: " + status + "\n").getBytes(CHARSET));
+        } catch (IOException error) {
+            // The client went away; there is no one left to tell.
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void reject(HttpExchange exchange, int code, String message) throws IOException {
+        byte[] bytes = (message + "\n").getBytes(CHARSET);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Interrupts one run when its time is up. Workers are reused, so once
+    // the run has finished the interrupt must never land, and one that
+    // already did must not leak into the next run on that thread.
+    private class Deadline {
+        private final Thread worker;
+        private ScheduledFuture<?> timer;
+        private boolean running = true;
+
+        Deadline(Thread worker) {
+            this.worker = worker;
+        }
+
+        void schedule(long millis) {
+            timer = timers.schedule(this::expire, millis, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void expire() {
+            if (running) worker.interrupt();
+        }
+
+        synchronized void finish() {
+            running = false;
+            timer.cancel(false);
+            Thread.interrupted();
+        }
+    }
+}
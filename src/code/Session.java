@@ -0,0 +1,126 @@
+package code;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Everything one run of a program owns: its symbols and globals, its
+// error state, where DISPLAY goes and where SCAN reads from. Nothing here
+// is shared, so any number of sessions can run at once in one JVM. The
+// prompt keeps a single session for all its lines so globals carry over.
+class Session {
+    private static final String PROMPT = "<prompt>";
+
+    // How programs are run, shared by every session of one invocation.
+    static class Options {
+        boolean useVm = false;
+        boolean showNodeCounts = false;
+        boolean streamSource = false;
+        ProgramCache cache;
+        // Only the tree-walking Interpreter enforces these.
+        Limits limits = Limits.NONE;
+        boolean profile = false;
+        // Sample every this many microseconds instead of timing everything.
+        long sampleMicros = 0;
+    }
+
+    private final Options options;
+    private final SymbolTable symbols = new SymbolTable();
+    private final Resolver resolver;
+    private final Reporter reporter;
+    private final Profiler profiler;
+    private final Interpreter interpreter;
+    private final VM vm;
+
+    Session(Options options, Reporter reporter, Output output, Input input) {
+        this.options = options;
+        this.reporter = reporter;
+        this.resolver = new Resolver(reporter);
+        this.profiler = !options.profile ? null
+                : options.sampleMicros > 0 ? Profiler.sampling(options.sampleMicros) : Profiler.exact();
+        this.interpreter = new Interpreter(reporter, output, input, options.limits, profiler);
+        this.vm = new VM(reporter, output, input);
+    }
+
+    Reporter reporter() {
+        return reporter;
+    }
+
+    // Null unless the options asked for profiling.
+    Profiler profiler() {
+        return profiler;
+    }
+
+    // The exit code the run should end with.
+    int status() {
+        if (reporter.hadError) return 65;
+        if (reporter.hadRuntimeError) return 70;
+        return 0;
+    }
+
+    void runFile(Path file) throws IOException {
+        String program = file.toString();
+        ProgramCache.Entry entry = options.cache != null ? options.cache.entry(file) : null;
+        List<Stmt> statements = entry != null ? entry.load(symbols) : null;
+
+        if (statements == null) {
+            if (options.streamSource) {
+                // Lexed straight out of the mapped file as the parser asks for
+                // tokens, so neither the text nor the token list is ever whole.
+                statements = Events.parse(program,
+                        TokenStream.of(new Scanner(MappedSource.open(file), symbols, reporter)), reporter);
+            } else {
+                byte[] bytes = Files.readAllBytes(file);
+                Scanner scanner = new Scanner(new String(bytes, Charset.defaultCharset()), symbols, reporter);
+                statements = Events.parse(program, Events.scan(program, scanner), reporter);
+            }
+            if (entry != null && !reporter.hadError) entry.store(statements);
+        }
+        run(program, statements);
+    }
+
+    // A line typed at the prompt.
+    void run(String source) {
+        Scanner scanner = new Scanner(source, symbols, reporter);
+        run(PROMPT, Events.parse(PROMPT, Events.scan(PROMPT, scanner), reporter));
+    }
+
+    private void run(String program, List<Stmt> statements) {
+        // Stop if there was a syntax error.
+        if (reporter.hadError) return;
+
+        int parsedNodes = options.showNodeCounts ? new NodeCounter().count(statements) : 0;
+
+        Events.Compile compile = new Events.Compile();
+        compile.begin();
+        resolver.resolve(statements);
+
+        // Stop if there was a resolution error.
+        if (reporter.hadError) return;
+
+        statements = new TypeChecker(reporter).check(statements);
+
+        // Stop if there was a type error.
+        if (reporter.hadError) return;
+
+        statements = new Optimizer(reporter).optimize(statements);
+        compile.end();
+        if (compile.shouldCommit()) {
+            compile.program = program;
+            compile.nodes = new NodeCounter().count(statements);
+            compile.commit();
+        }
+        if (options.showNodeCounts) {
+            reporter.err().println("[nodes] " + parsedNodes + " parsed, "
+                    + new NodeCounter().count(statements) + " after optimizing");
+        }
+
+        if (options.useVm) {
+            vm.interpret(new Compiler().compile(statements, resolver.globalCount()));
+        } else {
+            interpreter.interpret(program, statements);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package code;
+
+// Operators whose operand types the TypeChecker cannot pin down to one
+// primitive: '&' takes any values, and '==' / '<>' on CHAR, STRING or
+// mixed operands compare boxed values where STRING may also hold NIL.
+// STRING values are either a String or a not yet flattened Rope.
+// On its first run each node records the classes of its operands and
+// picks the operation written for exactly those classes. After that, one
+// class-identity check per operand is all that stands between the operands
+// and that operation. The first mismatch, a NIL included, drops the node to
+// the generic path for good, so the cache never flip-flops. The record is
+// one immutable object, so a run on another thread sees either all of it or
+// none of it.
+class SpecializingExpr {
+    // Turns an operand of one known class into text.
+    private interface Text {
+        CharSequence of(Object value);
+    }
+
+    // Compares operands of known classes.
+    private interface Test {
+        boolean equal(Object left, Object right);
+    }
+
+    private static final Text CHARACTERS = value -> (CharSequence) value;
+    private static final Text BOOLEAN = value -> (Boolean) value ? "TRUE" : "FALSE";
+    private static final Text OTHER = Object::toString;
+
+    private static final Test STRINGS = (left, right) -> left.equals(right);
+    private static final Test CHARS = (left, right) -> (char) (Character) left == (char) (Character) right;
+    private static final Test ROPES = (left, right) -> Rope.flatten(left).equals(Rope.flatten(right));
+
+    // A whole '&' chain as one node, however the source grouped it: '&'
+    // turns every operand into text, so the grouping never changes the
+    // result. The operands are evaluated in a loop and joined in one pass,
+    // so a long chain costs neither a stack frame nor a Rope per operand.
+    // left and right are null; operators[i] is the '&' before operands[i + 1].
+    static class Concatenation extends Expr.Binary {
+        private static final Shape GENERIC = new Shape(new Class<?>[0]);
+
+        final Expr[] operands;
+        final Token[] operators;
+        private Shape shape;
+
+        Concatenation(Expr[] operands, Token[] operators) {
+            super(null, operators[0], null);
+            this.operands = operands;
+            this.operators = operators;
+            type = TokenType.STRING;
+        }
+
+        CharSequence evaluate(Interpreter interpreter) {
+            CharSequence[] pieces = new CharSequence[operands.length];
+            Class<?>[] seen = shape == null ? new Class<?>[operands.length] : null;
+            long length = 0;
+            for (int i = 0; i < operands.length; i++) {
+                Object value = interpreter.evaluate(operands[i]);
+                Shape shape = this.shape;
+                if (shape != null && shape != GENERIC) {
+                    if (value != null && value.getClass() == shape.classes[i]) {
+                        pieces[i] = shape.texts[i].of(value);
+                    } else {
+                        this.shape = GENERIC;
+                        pieces[i] = Interpreter.text(value);
+                    }
+                } else {
+                    if (seen != null) seen[i] = value != null ? value.getClass() : null;
+                    pieces[i] = Interpreter.text(value);
+                }
+
+                // The length each '&' would have produced on its own, for
+                // the error a left-to-right join reports.
+                length += pieces[i].length();
+                if (i > 0) interpreter.limitLength(length, operators[i - 1]);
+            }
+
+            if (seen != null) this.shape = new Shape(seen);
+            return Rope.join(pieces);
+        }
+
+        private static final class Shape {
+            final Class<?>[] classes;
+            final Text[] texts;
+
+            Shape(Class<?>[] classes) {
+                this.classes = classes;
+                this.texts = new Text[classes.length];
+                for (int i = 0; i < classes.length; i++) {
+                    texts[i] = text(classes[i]);
+                }
+            }
+
+            private static Text text(Class<?> type) {
+                if (isText(type)) return CHARACTERS;
+                if (type == Boolean.class) return BOOLEAN;
+                return OTHER;
+            }
+        }
+    }
+
+    static class Equality extends Expr.Binary {
+        private static final Shape GENERIC = new Shape(null, null, null);
+
+        private final boolean negated;
+        private Shape shape;
+
+        Equality(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+            type = TokenType.BOOL;
+            negated = operator.type == TokenType.LESS_GREATER;
+        }
+
+        boolean evaluate(Interpreter interpreter) {
+            Object left = interpreter.evaluate(this.left);
+            Object right = interpreter.evaluate(this.right);
+            return equal(left, right) != negated;
+        }
+
+        private boolean equal(Object left, Object right) {
+            Shape shape = this.shape;
+            if (shape != null && shape != GENERIC) {
+                if (left != null && left.getClass() == shape.left
+                        && right != null && right.getClass() == shape.right) {
+                    return shape.test.equal(left, right);
+                }
+                this.shape = GENERIC;
+            } else if (shape == null) {
+                this.shape = left != null && right != null ? Shape.of(left.getClass(), right.getClass()) : GENERIC;
+            }
+            return Interpreter.isEqual(left, right);
+        }
+
+        private static final class Shape {
+            final Class<?> left;
+            final Class<?> right;
+            final Test test;
+
+            Shape(Class<?> left, Class<?> right, Test test) {
+                this.left = left;
+                this.right = right;
+                this.test = test;
+            }
+
+            // Only pairs with an operation of their own are worth recording.
+            static Shape of(Class<?> left, Class<?> right) {
+                if (left == String.class && right == String.class) return new Shape(left, right, STRINGS);
+                if (left == Character.class && right == Character.class) return new Shape(left, right, CHARS);
+                if (isText(left) && isText(right)) return new Shape(left, right, ROPES);
+                return GENERIC;
+            }
+        }
+    }
+
+    private static boolean isText(Class<?> type) {
+        return type == String.class || type == Rope.class;
+    }
+
+    private SpecializingExpr() {}
+}
@@ -6,6 +6,7 @@ abstract class Stmt {
     interface Visitor<R> {
         R visitBlockStmt(Block stmt);
         R visitExpressionStmt(Expression stmt);
+        R visitForStmt(For stmt);
         R visitIfStmt(If stmt);
         R visitPrintStmt(Print stmt);
         R visitScanStmt(Scan stmt);
@@ -23,6 +24,10 @@ abstract class Stmt {
         }
 
         final List<Stmt> statements;
+
+        // Declared type of each slot in this block, filled in by the Resolver;
+        // null when the block declares nothing and so needs no scope.
+        TokenType[] layout;
     }
     static class Expression extends Stmt {
         Expression(Expr expression) {
@@ -36,6 +41,41 @@ abstract class Stmt {
 
         final Expr expression;
     }
+    // The loop's own scope holds the initializer's variable; the condition
+    // and increment run in it, and the body inside it.
+    static class For extends Stmt {
+        For(Token keyword, Stmt initializer, Expr condition, Expr increment, Stmt body) {
+            this.keyword = keyword;
+            this.initializer = initializer;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitForStmt(this);
+        }
+
+        final Token keyword;
+        final Stmt initializer;
+        final Expr condition;
+        final Expr increment;
+        final Stmt body;
+
+        // Declared type of each slot in the loop's scope, filled in by the
+        // Resolver; null when the initializer declares nothing.
+        TokenType[] layout;
+
+        // Filled in by the Optimizer for a counted loop,
+        // "INT i = a; i <= limit; i = i + step" or the same with '<': the
+        // counter's slot, -1 for any other loop. The limit has no side
+        // effects, so the Interpreter may read it without the condition.
+        int counter = -1;
+        boolean inclusive;
+        Expr limit;
+        int step;
+    }
     static class If extends Stmt {
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
             this.condition = condition;
@@ -53,7 +93,8 @@ abstract class Stmt {
         final Stmt elseBranch;
     }
     static class Print extends Stmt {
-        Print(Expr expression) {
+        Print(Token keyword, Expr expression) {
+            this.keyword = keyword;
             this.expression = expression;
         }
 
@@ -62,11 +103,12 @@ abstract class Stmt {
             return visitor.visitPrintStmt(this);
         }
 
+        final Token keyword;
         final Expr expression;
     }
 
     static class Scan extends Stmt {
-        Scan(List<Token> variables) {
+        Scan(List<Expr.Variable> variables) {
             this.variables = variables;
         }
 
@@ -75,12 +117,13 @@ abstract class Stmt {
             return visitor.visitScanStmt(this);
         }
 
-        final List<Token> variables;
+        final List<Expr.Variable> variables;
     }
 
     static class Var extends Stmt {
         Var(Token name, Expr initializer, TokenType type) {
             this.name = name;
+            this.symbol = name.symbol;
             this.initializer = initializer;
             this.type = type;
         }
@@ -91,11 +134,16 @@ abstract class Stmt {
         }
 
         final Token name;
+        final int symbol;
         final Expr initializer;
         final TokenType type;
+
+        // Filled in by the Resolver.
+        int slot = -1;
     }
     static class While extends Stmt {
-        While(Expr condition, Stmt body) {
+        While(Token keyword, Expr condition, Stmt body) {
+            this.keyword = keyword;
             this.condition = condition;
             this.body = body;
         }
@@ -105,6 +153,7 @@ abstract class Stmt {
             return visitor.visitWhileStmt(this);
         }
 
+        final Token keyword;
         final Expr condition;
         final Stmt body;
     }
@@ -0,0 +1,79 @@
+package code;
+
+import java.util.Arrays;
+
+// Every distinct identifier in a program, numbered densely from 0 in order
+// of first appearance. A name is hashed straight from the source, so only
+// its first occurrence creates a String; every later Token for it shares
+// that one String and carries the number, which is what the Resolver keys
+// its scopes on.
+class SymbolTable {
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    // Open addressing; each entry is a symbol plus one, zero when empty.
+    private int[] table = new int[128];
+    private int size = 0;
+
+    int intern(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int mask = table.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            int entry = table[i];
+            if (entry == 0) {
+                return add(source.subSequence(start, end).toString(), hash, i);
+            }
+
+            int symbol = entry - 1;
+            if (hashes[symbol] == hash && matches(names[symbol], source, start, end)) return symbol;
+        }
+    }
+
+    String name(int symbol) {
+        return names[symbol];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int index) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        int symbol = size++;
+        names[symbol] = name;
+        hashes[symbol] = hash;
+        table[index] = symbol + 1;
+
+        if (size * 2 > table.length) rehash();
+        return symbol;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int symbol = 0; symbol < size; symbol++) {
+            int i = spread(hashes[symbol]) & mask;
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = symbol + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
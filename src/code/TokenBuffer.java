@@ -0,0 +1,138 @@
+package code;
+
+import java.util.Arrays;
+
+// Every token of a source, one column per field: type, start offset,
+// length and line live in parallel int arrays, and nothing else is stored
+// for most tokens. The Parser walks it by index and only gets a Token
+// object, with its lexeme cut out of the source and its literal value
+// worked out from that lexeme, for the tokens it actually keeps. The one
+// exception is a string literal with escapes, whose value is not a slice
+// of the source and is stored as the Scanner built it. Identifiers also
+// keep their symbol, and take their lexeme from the SymbolTable.
+class TokenBuffer extends TokenStream {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence source;
+    private final SymbolTable symbols;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] ids;
+    private Object[] literals;
+    private int size = 0;
+
+    private int current = 0;
+
+    // The two most recently materialized tokens, by index parity, so the
+    // Parser can look at the current and previous token repeatedly.
+    private final Token[] recent = new Token[2];
+    private final int[] recentIndex = {-1, -1};
+
+    TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+        int capacity = Math.max(16, source.length() / 4);
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        ids = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line, Object literal, int symbol) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            if (literals != null) literals = Arrays.copyOf(literals, capacity);
+        }
+
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        ids[size] = symbol;
+        if (type == TokenType.STRING_LITERAL && literal != null && source.charAt(start) == '"') {
+            if (literals == null) literals = new Object[types.length];
+            literals[size] = literal;
+        }
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    CharSequence lexeme(int index) {
+        return source.subSequence(starts[index], starts[index] + lengths[index]);
+    }
+
+    Token token(int index) {
+        int slot = index & 1;
+        if (recentIndex[slot] != index) {
+            int symbol = ids[index];
+            String lexeme = symbol >= 0 ? symbols.name(symbol) : lexeme(index).toString();
+            recent[slot] = new Token(type(index), lexeme, literal(index, lexeme), lines[index], symbol);
+            recentIndex[slot] = index;
+        }
+        return recent[slot];
+    }
+
+    private Object literal(int index, String lexeme) {
+        switch (type(index)) {
+            case INT_LITERAL:
+                return Integer.parseInt(lexeme);
+            case FLOAT_LITERAL:
+                return Double.parseDouble(lexeme);
+            case CHAR_LITERAL:
+                // 'c' or '[c]'
+                return lexeme.charAt(1) == '[' ? lexeme.charAt(2) : lexeme.charAt(1);
+            case STRING_LITERAL:
+                if (literals != null && literals[index] != null) return literals[index];
+                if (lexeme.equals("$")) return "\n";
+                // [c] outside a string, or "text" with nothing to unescape.
+                if (lexeme.charAt(0) == '[') return lexeme.substring(1, 2);
+                return lexeme.substring(1, lexeme.length() - 1);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    TokenType peekType() {
+        return TYPES[types[current]];
+    }
+
+    @Override
+    Token peek() {
+        return token(current);
+    }
+
+    @Override
+    Token previous() {
+        return token(current - 1);
+    }
+
+    @Override
+    void advance() {
+        if (types[current] != TokenType.EOF.ordinal()) current++;
+    }
+
+    @Override
+    int read() {
+        return current + 1;
+    }
+}
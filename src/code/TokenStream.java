@@ -0,0 +1,95 @@
+package code;
+
+import java.util.List;
+
+// What the Parser reads: the token it is looking at and the one it just
+// consumed. Nothing before that is ever looked at again, so tokens can be
+// produced on demand instead of all being held in a list.
+abstract class TokenStream {
+    abstract Token peek();
+
+    TokenType peekType() {
+        return peek().type;
+    }
+
+    abstract Token previous();
+
+    // Moves to the next token; stays put at EOF.
+    abstract void advance();
+
+    // How many tokens the Parser has reached, the current one included.
+    abstract int read();
+
+    static TokenStream of(List<Token> tokens) {
+        return new ListStream(tokens);
+    }
+
+    static TokenStream of(Scanner scanner) {
+        return new ScannerStream(scanner);
+    }
+
+    static class ListStream extends TokenStream {
+        private final List<Token> tokens;
+        private int current = 0;
+
+        ListStream(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        Token peek() {
+            return tokens.get(current);
+        }
+
+        @Override
+        Token previous() {
+            return tokens.get(current - 1);
+        }
+
+        @Override
+        void advance() {
+            if (peek().type != TokenType.EOF) current++;
+        }
+
+        @Override
+        int read() {
+            return current + 1;
+        }
+    }
+
+    // Pulls each token from the Scanner as the Parser reaches it.
+    static class ScannerStream extends TokenStream {
+        private final Scanner scanner;
+        private Token previous;
+        private Token current;
+        private int read = 1;
+
+        ScannerStream(Scanner scanner) {
+            this.scanner = scanner;
+            this.current = scanner.nextToken();
+        }
+
+        @Override
+        Token peek() {
+            return current;
+        }
+
+        @Override
+        Token previous() {
+            return previous;
+        }
+
+        @Override
+        void advance() {
+            if (current.type == TokenType.EOF) return;
+            previous = current;
+            current = scanner.nextToken();
+            read++;
+        }
+
+        @Override
+        int read() {
+            return read;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static code.TokenType.*;
+
+// Runs after the Resolver. Infers the type of every expression from the
+// declared variable types, reports mismatches before anything executes, and
+// rebuilds the tree with the TypedExpr nodes in place of generic operators.
+class TypeChecker implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private final Reporter reporter;
+
+    TypeChecker(Reporter reporter) {
+        this.reporter = reporter;
+    }
+
+    List<Stmt> check(List<Stmt> statements) {
+        List<Stmt> checked = new ArrayList<>();
+        for (Stmt statement : statements) {
+            checked.add(check(statement));
+        }
+        return checked;
+    }
+
+    private Stmt check(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr check(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Types one node the Optimizer has rebuilt around operands that are
+    // already checked, without walking those operands again.
+    Expr type(Expr expr) {
+        if (expr instanceof Expr.Binary binary) return binary(binary.left, binary.operator, binary.right);
+        if (expr instanceof Expr.Logical logical) return logical(logical.left, logical.operator, logical.right);
+        if (expr instanceof Expr.Unary unary) return unary(unary.operator, unary.right);
+        return check(expr);
+    }
+
+    private static boolean isNumber(TokenType type) {
+        return type == INT || type == FLOAT;
+    }
+
+    private void checkAssignable(Token name, TokenType target, Expr value) {
+        if (value.type == null) return;
+        if (value.type == target || (target == STRING && value.type == NIL)) return;
+
+        reporter.error(name, "Invalid assignment value. Value should be of type " + target);
+    }
+
+    private Expr condition(Expr expr) {
+        Expr condition = check(expr);
+        if (condition.type != null && condition.type != BOOL) {
+            reporter.error(tokenOf(condition), "Condition must be of type BOOL.");
+        }
+        return condition;
+    }
+
+    // Statements carry no token of their own; report at the first one inside.
+    private static Token tokenOf(Expr expr) {
+        if (expr instanceof Expr.Binary binary) return binary.operator;
+        if (expr instanceof Expr.Logical logical) return logical.operator;
+        if (expr instanceof Expr.Unary unary) return unary.operator;
+        if (expr instanceof Expr.Variable variable) return variable.name;
+        if (expr instanceof Expr.Assign assign) return assign.name;
+        return new Token(EOF, "", null, 0);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        Stmt.Block block = new Stmt.Block(check(stmt.statements));
+        block.layout = stmt.layout;
+        return block;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(check(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Stmt initializer = stmt.initializer != null ? check(stmt.initializer) : null;
+        Expr condition = condition(stmt.condition);
+        Expr increment = stmt.increment != null ? check(stmt.increment) : null;
+        Stmt.For loop = new Stmt.For(stmt.keyword, initializer, condition, increment, check(stmt.body));
+        loop.layout = stmt.layout;
+        return loop;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = condition(stmt.condition);
+        Stmt thenBranch = check(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch != null ? check(stmt.elseBranch) : null;
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(stmt.keyword, check(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitScanStmt(Stmt.Scan stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = null;
+        if (stmt.initializer != null) {
+            initializer = check(stmt.initializer);
+            checkAssignable(stmt.name, stmt.type, initializer);
+        }
+
+        Stmt.Var var = new Stmt.Var(stmt.name, initializer, stmt.type);
+        var.slot = stmt.slot;
+        return var;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        return new Stmt.While(stmt.keyword, condition(stmt.condition), check(stmt.body));
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = check(expr.value);
+        checkAssignable(expr.name, expr.type, value);
+
+        Expr.Assign assign = new Expr.Assign(expr.name, value);
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        assign.type = expr.type;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        if (expr.operator.type == AMPERSAND) return concatenation(expr);
+        return binary(check(expr.left), expr.operator, check(expr.right));
+    }
+
+    private Expr binary(Expr left, Token operator, Expr right) {
+        TokenType operands = left.type == right.type ? left.type : null;
+
+        switch (operator.type) {
+            case EQUAL_EQUAL:
+            case LESS_GREATER: {
+                boolean equal = operator.type == EQUAL_EQUAL;
+                if (operands == INT) {
+                    return equal ? new TypedExpr.IntEqual(left, operator, right)
+                            : new TypedExpr.IntNotEqual(left, operator, right);
+                }
+                if (operands == FLOAT) {
+                    return equal ? new TypedExpr.FloatEqual(left, operator, right)
+                            : new TypedExpr.FloatNotEqual(left, operator, right);
+                }
+                if (operands == BOOL) {
+                    return equal ? new TypedExpr.BoolEqual(left, operator, right)
+                            : new TypedExpr.BoolNotEqual(left, operator, right);
+                }
+
+                // Any two values can be compared for equality.
+                return new SpecializingExpr.Equality(left, operator, right);
+            }
+        }
+
+        if (left.type == null || right.type == null) {
+            // Already reported further down the tree.
+            return new Expr.Binary(left, operator, right);
+        }
+        if (isNumber(left.type) && isNumber(right.type) && left.type != right.type) {
+            reporter.error(operator, "Number operands must be of the same data type. Ex. (INT "
+                    + operator.lexeme + " INT) or " + "(FLOAT " + operator.lexeme + " FLOAT)");
+            return new Expr.Binary(left, operator, right);
+        }
+        if (!isNumber(operands)) {
+            reporter.error(operator, "Operands must be numbers.");
+            return new Expr.Binary(left, operator, right);
+        }
+
+        if (operands == INT) {
+            switch (operator.type) {
+                case GREATER: return new TypedExpr.IntGreater(left, operator, right);
+                case GREATER_EQUAL: return new TypedExpr.IntGreaterEqual(left, operator, right);
+                case LESS: return new TypedExpr.IntLess(left, operator, right);
+                case LESS_EQUAL: return new TypedExpr.IntLessEqual(left, operator, right);
+                case MINUS: return new TypedExpr.IntSubtract(left, operator, right);
+                case PLUS: return new TypedExpr.IntAdd(left, operator, right);
+                case SLASH: return new TypedExpr.IntDivide(left, operator, right);
+                case STAR: return new TypedExpr.IntMultiply(left, operator, right);
+                default: return new TypedExpr.IntMod(left, operator, right);
+            }
+        }
+
+        switch (operator.type) {
+            case GREATER: return new TypedExpr.FloatGreater(left, operator, right);
+            case GREATER_EQUAL: return new TypedExpr.FloatGreaterEqual(left, operator, right);
+            case LESS: return new TypedExpr.FloatLess(left, operator, right);
+            case LESS_EQUAL: return new TypedExpr.FloatLessEqual(left, operator, right);
+            case MINUS: return new TypedExpr.FloatSubtract(left, operator, right);
+            case PLUS: return new TypedExpr.FloatAdd(left, operator, right);
+            case SLASH: return new TypedExpr.FloatDivide(left, operator, right);
+            case STAR: return new TypedExpr.FloatMultiply(left, operator, right);
+            default: return new TypedExpr.FloatMod(left, operator, right);
+        }
+    }
+
+    // The Parser nests an '&' chain down the left side. Walking that in a
+    // loop, into one node, keeps a long chain from costing a stack frame
+    // per operand, here and when it runs.
+    private Expr concatenation(Expr.Binary expr) {
+        List<Expr> rights = new ArrayList<>();
+        List<Token> joins = new ArrayList<>();
+        Expr first = expr;
+        while (first instanceof Expr.Binary binary && binary.operator.type == AMPERSAND) {
+            rights.add(binary.right);
+            joins.add(binary.operator);
+            first = binary.left;
+        }
+
+        List<Expr> operands = new ArrayList<>();
+        List<Token> operators = new ArrayList<>();
+        addOperand(check(first), operands, operators);
+        for (int i = rights.size() - 1; i >= 0; i--) {
+            operators.add(joins.get(i));
+            addOperand(check(rights.get(i)), operands, operators);
+        }
+        return new SpecializingExpr.Concatenation(operands.toArray(new Expr[0]), operators.toArray(new Token[0]));
+    }
+
+    // A grouped chain, as in "a & (b & c)", joins like the flat one.
+    private static void addOperand(Expr operand, List<Expr> operands, List<Token> operators) {
+        if (operand instanceof SpecializingExpr.Concatenation chain) {
+            operands.addAll(Arrays.asList(chain.operands));
+            operators.addAll(Arrays.asList(chain.operators));
+        } else {
+            operands.add(operand);
+        }
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        // Parentheses only matter to the parser.
+        return check(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) expr.type = NIL;
+        else if (expr.value instanceof Integer) expr.type = INT;
+        else if (expr.value instanceof Double) expr.type = FLOAT;
+        else if (expr.value instanceof Boolean) expr.type = BOOL;
+        else if (expr.value instanceof Character) expr.type = CHAR;
+        else expr.type = STRING;
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        return logical(check(expr.left), expr.operator, check(expr.right));
+    }
+
+    private Expr logical(Expr left, Token operator, Expr right) {
+        if (left.type == BOOL && right.type == BOOL) {
+            return operator.type == OR ? new TypedExpr.BoolOr(left, operator, right)
+                    : new TypedExpr.BoolAnd(left, operator, right);
+        }
+
+        if (left.type != null && right.type != null) {
+            reporter.error(operator, "Operands must be of type BOOL.");
+        }
+        return new Expr.Logical(left, operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        return unary(expr.operator, check(expr.right));
+    }
+
+    private Expr unary(Token operator, Expr right) {
+        if (operator.type == NOT) {
+            if (right.type == BOOL) return new TypedExpr.BoolNot(operator, right);
+            if (right.type != null) reporter.error(operator, "Operand must be of type BOOL.");
+            return new Expr.Unary(operator, right);
+        }
+
+        if (right.type == INT) {
+            return operator.type == MINUS ? new TypedExpr.IntNegate(operator, right) : right;
+        }
+        if (right.type == FLOAT) {
+            return operator.type == MINUS ? new TypedExpr.FloatNegate(operator, right) : right;
+        }
+
+        if (right.type != null) reporter.error(operator, "Operand must be a number.");
+        return new Expr.Unary(operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+}
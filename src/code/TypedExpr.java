@@ -0,0 +1,368 @@
+package code;
+
+// Nodes the TypeChecker substitutes for Binary, Unary and Logical once both
+// operand types are known. Each one evaluates its operands through the
+// matching unboxed Interpreter path, so no value is type-tested at runtime.
+// Other passes still see them as the plain node they extend.
+class TypedExpr {
+    // The Interpreter tells these apart with instanceof on abstract classes
+    // rather than interfaces: a class check is a constant-time lookup, while
+    // interface checks go through a one-entry cache that thrashes when
+    // several node classes alternate at the same call site.
+    abstract static class IntBinary extends Expr.Binary {
+        IntBinary(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+            type = TokenType.INT;
+        }
+
+        abstract int evaluate(Interpreter interpreter);
+    }
+
+    abstract static class FloatBinary extends Expr.Binary {
+        FloatBinary(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+            type = TokenType.FLOAT;
+        }
+
+        abstract double evaluate(Interpreter interpreter);
+    }
+
+    abstract static class Comparison extends Expr.Binary {
+        Comparison(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+            type = TokenType.BOOL;
+        }
+
+        abstract boolean evaluate(Interpreter interpreter);
+    }
+
+    abstract static class BoolLogical extends Expr.Logical {
+        BoolLogical(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+            type = TokenType.BOOL;
+        }
+
+        abstract boolean evaluate(Interpreter interpreter);
+    }
+
+    static class IntAdd extends IntBinary {
+        IntAdd(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        int evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) + interpreter.evaluateInt(right);
+        }
+    }
+
+    static class IntSubtract extends IntBinary {
+        IntSubtract(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        int evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) - interpreter.evaluateInt(right);
+        }
+    }
+
+    static class IntMultiply extends IntBinary {
+        IntMultiply(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        int evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) * interpreter.evaluateInt(right);
+        }
+    }
+
+    static class IntDivide extends IntBinary {
+        IntDivide(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        int evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) / interpreter.evaluateInt(right);
+        }
+    }
+
+    static class IntMod extends IntBinary {
+        IntMod(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        int evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) % interpreter.evaluateInt(right);
+        }
+    }
+
+    static class FloatAdd extends FloatBinary {
+        FloatAdd(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        double evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) + interpreter.evaluateDouble(right);
+        }
+    }
+
+    static class FloatSubtract extends FloatBinary {
+        FloatSubtract(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        double evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) - interpreter.evaluateDouble(right);
+        }
+    }
+
+    static class FloatMultiply extends FloatBinary {
+        FloatMultiply(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        double evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) * interpreter.evaluateDouble(right);
+        }
+    }
+
+    static class FloatDivide extends FloatBinary {
+        FloatDivide(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        double evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) / interpreter.evaluateDouble(right);
+        }
+    }
+
+    static class FloatMod extends FloatBinary {
+        FloatMod(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        double evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) % interpreter.evaluateDouble(right);
+        }
+    }
+
+    static class IntGreater extends Comparison {
+        IntGreater(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) > interpreter.evaluateInt(right);
+        }
+    }
+
+    static class IntGreaterEqual extends Comparison {
+        IntGreaterEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) >= interpreter.evaluateInt(right);
+        }
+    }
+
+    static class IntLess extends Comparison {
+        IntLess(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) < interpreter.evaluateInt(right);
+        }
+    }
+
+    static class IntLessEqual extends Comparison {
+        IntLessEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateInt(left) <= interpreter.evaluateInt(right);
+        }
+    }
+
+    static class IntEqual extends Comparison {
+        IntEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.equalInts(left, right);
+        }
+    }
+
+    static class IntNotEqual extends Comparison {
+        IntNotEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return !interpreter.equalInts(left, right);
+        }
+    }
+
+    static class FloatGreater extends Comparison {
+        FloatGreater(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) > interpreter.evaluateDouble(right);
+        }
+    }
+
+    static class FloatGreaterEqual extends Comparison {
+        FloatGreaterEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) >= interpreter.evaluateDouble(right);
+        }
+    }
+
+    static class FloatLess extends Comparison {
+        FloatLess(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) < interpreter.evaluateDouble(right);
+        }
+    }
+
+    static class FloatLessEqual extends Comparison {
+        FloatLessEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateDouble(left) <= interpreter.evaluateDouble(right);
+        }
+    }
+
+    // Same results as Double.equals, which the generic == relies on.
+    static class FloatEqual extends Comparison {
+        FloatEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.equalDoubles(left, right);
+        }
+    }
+
+    static class FloatNotEqual extends Comparison {
+        FloatNotEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return !interpreter.equalDoubles(left, right);
+        }
+    }
+
+    static class BoolEqual extends Comparison {
+        BoolEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.equalBooleans(left, right);
+        }
+    }
+
+    static class BoolNotEqual extends Comparison {
+        BoolNotEqual(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        boolean evaluate(Interpreter interpreter) {
+            return !interpreter.equalBooleans(left, right);
+        }
+    }
+
+    static class BoolAnd extends BoolLogical {
+        BoolAnd(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateBoolean(left) && interpreter.evaluateBoolean(right);
+        }
+    }
+
+    static class BoolOr extends BoolLogical {
+        BoolOr(Expr left, Token operator, Expr right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        boolean evaluate(Interpreter interpreter) {
+            return interpreter.evaluateBoolean(left) || interpreter.evaluateBoolean(right);
+        }
+    }
+
+    static class BoolNot extends Expr.Unary {
+        BoolNot(Token operator, Expr right) {
+            super(operator, right);
+            type = TokenType.BOOL;
+        }
+
+        boolean evaluate(Interpreter interpreter) {
+            return !interpreter.evaluateBoolean(right);
+        }
+    }
+
+    static class IntNegate extends Expr.Unary {
+        IntNegate(Token operator, Expr right) {
+            super(operator, right);
+            type = TokenType.INT;
+        }
+
+        int evaluate(Interpreter interpreter) {
+            return -interpreter.evaluateInt(right);
+        }
+    }
+
+    static class FloatNegate extends Expr.Unary {
+        FloatNegate(Token operator, Expr right) {
+            super(operator, right);
+            type = TokenType.FLOAT;
+        }
+
+        double evaluate(Interpreter interpreter) {
+            return -interpreter.evaluateDouble(right);
+        }
+    }
+
+    private TypedExpr() {}
+}
@@ -0,0 +1,364 @@
+package code;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+import static code.OpCode.*;
+
+// Runs a Chunk. The operand stack and the frame each come in two halves
+// indexed alike: a long[] for INT, FLOAT and BOOL values and an Object[]
+// for the rest, so arithmetic, comparisons and jumps never box. Which half
+// a slot uses was settled by the Compiler; the VM never checks.
+class VM {
+    // What an unboxed variable declared without a value holds: outside the
+    // int range, neither 0 nor 1, and a NaN no arithmetic produces. Copies
+    // and == pass it along like any value; BOX_* turn it into NIL, and
+    // operands that must be numbers or BOOLs are read with GET_CHECKED.
+    static final long NIL_BITS = 0x7FF0_0000_0000_0001L;
+
+    private static final TokenType[] TYPES = TokenType.values();
+    // Loop back-edges between looks at the thread's interrupt flag.
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final Reporter reporter;
+    private final Output output;
+    private final Input input;
+
+    // Kept between runs so the prompt can keep using earlier globals.
+    private long[] values = new long[0];
+    private Object[] objects = new Object[0];
+
+    VM(Reporter reporter, Output output, Input input) {
+        this.reporter = reporter;
+        this.output = output;
+        this.input = input;
+    }
+
+    void interpret(Chunk chunk) {
+        if (values.length < chunk.frameSize) {
+            values = Arrays.copyOf(values, chunk.frameSize);
+            objects = Arrays.copyOf(objects, chunk.frameSize);
+        }
+
+        try {
+            run(chunk.code(), chunk.constants(), values, objects,
+                    new long[chunk.stackSize], new Object[chunk.stackSize]);
+        } catch (RuntimeError error) {
+            output.flush();
+            reporter.runtimeError(error);
+        } finally {
+            output.flush();
+        }
+    }
+
+    private void run(int[] code, Object[] constants, long[] locals, Object[] frame, long[] stack, Object[] refs) {
+        int ip = 0;
+        int sp = 0;
+        int fuel = CHECK_INTERVAL;
+
+        for (;;) {
+            switch (code[ip++]) {
+                case CONSTANT:
+                    refs[sp++] = constants[code[ip++]];
+                    break;
+                case NIL:
+                    refs[sp++] = null;
+                    break;
+                case INT:
+                    stack[sp++] = code[ip++];
+                    break;
+                case FLOAT:
+                    stack[sp++] = (long) code[ip] << 32 | (code[ip + 1] & 0xFFFFFFFFL);
+                    ip += 2;
+                    break;
+                case TRUE:
+                    stack[sp++] = 1;
+                    break;
+                case FALSE:
+                    stack[sp++] = 0;
+                    break;
+                case POP:
+                    refs[--sp] = null;
+                    break;
+                case GET_LOCAL:
+                    refs[sp++] = frame[code[ip++]];
+                    break;
+                case SET_LOCAL:
+                    frame[code[ip++]] = refs[sp - 1];
+                    break;
+                case DEFINE_LOCAL:
+                    frame[code[ip++]] = refs[--sp];
+                    refs[sp] = null;
+                    break;
+                case GET_VALUE:
+                    stack[sp++] = locals[code[ip++]];
+                    break;
+                case GET_CHECKED: {
+                    long value = locals[code[ip++]];
+                    if (value == NIL_BITS) {
+                        throw new RuntimeError((Token) constants[code[ip]], (String) constants[code[ip + 1]]);
+                    }
+                    stack[sp++] = value;
+                    ip += 2;
+                    break;
+                }
+                case SET_VALUE:
+                    locals[code[ip++]] = stack[sp - 1];
+                    break;
+                case DEFINE_VALUE:
+                    locals[code[ip++]] = stack[--sp];
+                    break;
+                case BOX_INT:
+                    refs[sp - 1] = stack[sp - 1] == NIL_BITS ? null : (Object) (int) stack[sp - 1];
+                    break;
+                case BOX_FLOAT:
+                    refs[sp - 1] = stack[sp - 1] == NIL_BITS ? null : (Object) Double.longBitsToDouble(stack[sp - 1]);
+                    break;
+                case BOX_BOOL:
+                    refs[sp - 1] = stack[sp - 1] == NIL_BITS ? null : (Object) (stack[sp - 1] != 0);
+                    break;
+                case EQUAL:
+                    sp--;
+                    stack[sp - 1] = Interpreter.isEqual(refs[sp - 1], refs[sp]) ? 1 : 0;
+                    refs[sp] = refs[sp - 1] = null;
+                    break;
+                case NOT_EQUAL:
+                    sp--;
+                    stack[sp - 1] = Interpreter.isEqual(refs[sp - 1], refs[sp]) ? 0 : 1;
+                    refs[sp] = refs[sp - 1] = null;
+                    break;
+                case CONCAT: {
+                    int count = code[ip++];
+                    CharSequence[] pieces = new CharSequence[count];
+                    sp -= count;
+                    for (int i = 0; i < count; i++) {
+                        pieces[i] = Interpreter.text(refs[sp + i]);
+                        refs[sp + i] = null;
+                    }
+                    refs[sp++] = Rope.join(pieces);
+                    break;
+                }
+                case ADD_INT:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] + (int) stack[sp];
+                    break;
+                case SUBTRACT_INT:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] - (int) stack[sp];
+                    break;
+                case MULTIPLY_INT:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] * (int) stack[sp];
+                    break;
+                case DIVIDE_INT:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] / (int) stack[sp];
+                    break;
+                case MODULO_INT:
+                    sp--;
+                    stack[sp - 1] = (int) stack[sp - 1] % (int) stack[sp];
+                    break;
+                case NEGATE_INT:
+                    stack[sp - 1] = -(int) stack[sp - 1];
+                    break;
+                case EQUAL_INT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1 : 0;
+                    break;
+                case NOT_EQUAL_INT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] != stack[sp] ? 1 : 0;
+                    break;
+                case GREATER_INT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+                    break;
+                case GREATER_EQUAL_INT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1 : 0;
+                    break;
+                case LESS_INT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+                    break;
+                case LESS_EQUAL_INT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1 : 0;
+                    break;
+                case ADD_FLOAT:
+                    sp--;
+                    stack[sp - 1] = bits(number(stack[sp - 1]) + number(stack[sp]));
+                    break;
+                case SUBTRACT_FLOAT:
+                    sp--;
+                    stack[sp - 1] = bits(number(stack[sp - 1]) - number(stack[sp]));
+                    break;
+                case MULTIPLY_FLOAT:
+                    sp--;
+                    stack[sp - 1] = bits(number(stack[sp - 1]) * number(stack[sp]));
+                    break;
+                case DIVIDE_FLOAT:
+                    sp--;
+                    stack[sp - 1] = bits(number(stack[sp - 1]) / number(stack[sp]));
+                    break;
+                case MODULO_FLOAT:
+                    sp--;
+                    stack[sp - 1] = bits(number(stack[sp - 1]) % number(stack[sp]));
+                    break;
+                case NEGATE_FLOAT:
+                    stack[sp - 1] = bits(-number(stack[sp - 1]));
+                    break;
+                case EQUAL_FLOAT:
+                    sp--;
+                    stack[sp - 1] = equalFloats(stack[sp - 1], stack[sp]) ? 1 : 0;
+                    break;
+                case NOT_EQUAL_FLOAT:
+                    sp--;
+                    stack[sp - 1] = equalFloats(stack[sp - 1], stack[sp]) ? 0 : 1;
+                    break;
+                case GREATER_FLOAT:
+                    sp--;
+                    stack[sp - 1] = number(stack[sp - 1]) > number(stack[sp]) ? 1 : 0;
+                    break;
+                case GREATER_EQUAL_FLOAT:
+                    sp--;
+                    stack[sp - 1] = number(stack[sp - 1]) >= number(stack[sp]) ? 1 : 0;
+                    break;
+                case LESS_FLOAT:
+                    sp--;
+                    stack[sp - 1] = number(stack[sp - 1]) < number(stack[sp]) ? 1 : 0;
+                    break;
+                case LESS_EQUAL_FLOAT:
+                    sp--;
+                    stack[sp - 1] = number(stack[sp - 1]) <= number(stack[sp]) ? 1 : 0;
+                    break;
+                case NOT:
+                    stack[sp - 1] ^= 1;
+                    break;
+                case PRINT:
+                    output.println(Interpreter.stringify(refs[--sp]));
+                    refs[sp] = null;
+                    break;
+                case SCAN: {
+                    Token first = (Token) constants[code[ip++]];
+                    int count = code[ip++];
+                    output.beforeScan();
+                    if (input.nextLine(first) != count) {
+                        throw new RuntimeError(first, "Number of input values does not match number of variables.");
+                    }
+                    for (int i = 0; i < count; i++) {
+                        int slot = code[ip++];
+                        TokenType type = TYPES[code[ip++]];
+                        switch (type) {
+                            case INT -> locals[slot] = input.nextInt(first);
+                            case FLOAT -> locals[slot] = bits(input.nextDouble(first));
+                            case BOOL -> locals[slot] = input.nextBoolean() ? 1 : 0;
+                            default -> frame[slot] = input.next(first, type);
+                        }
+                    }
+                    break;
+                }
+                case JUMP: {
+                    int offset = code[ip++];
+                    ip += offset;
+                    break;
+                }
+                case JUMP_IF_FALSE: {
+                    int offset = code[ip++];
+                    if (stack[sp - 1] == 0) ip += offset;
+                    break;
+                }
+                case POP_JUMP_IF_FALSE: {
+                    int offset = code[ip++];
+                    if (stack[--sp] == 0) ip += offset;
+                    break;
+                }
+                case LOOP: {
+                    int offset = code[ip++];
+                    ip -= offset;
+                    if (--fuel < 0) {
+                        fuel = CHECK_INTERVAL;
+                        if (Thread.interrupted()) throw new CancellationException("Time limit exceeded.");
+                    }
+                    break;
+                }
+                case ADD_INT_CONSTANT:
+                    stack[sp - 1] = (int) stack[sp - 1] + code[ip++];
+                    break;
+                case SUBTRACT_INT_CONSTANT:
+                    stack[sp - 1] = (int) stack[sp - 1] - code[ip++];
+                    break;
+                case MULTIPLY_INT_CONSTANT:
+                    stack[sp - 1] = (int) stack[sp - 1] * code[ip++];
+                    break;
+                case DIVIDE_INT_CONSTANT:
+                    stack[sp - 1] = (int) stack[sp - 1] / code[ip++];
+                    break;
+                case MODULO_INT_CONSTANT:
+                    stack[sp - 1] = (int) stack[sp - 1] % code[ip++];
+                    break;
+                case INCREMENT: {
+                    int slot = code[ip++];
+                    if (locals[slot] == NIL_BITS) {
+                        throw new RuntimeError((Token) constants[code[ip + 1]], "Operands must be numbers.");
+                    }
+                    locals[slot] = (int) locals[slot] + code[ip];
+                    ip += 2;
+                    break;
+                }
+                case JUMP_UNLESS_EQUAL_INT: {
+                    int offset = code[ip++];
+                    sp -= 2;
+                    if (stack[sp] != stack[sp + 1]) ip += offset;
+                    break;
+                }
+                case JUMP_UNLESS_NOT_EQUAL_INT: {
+                    int offset = code[ip++];
+                    sp -= 2;
+                    if (stack[sp] == stack[sp + 1]) ip += offset;
+                    break;
+                }
+                case JUMP_UNLESS_GREATER_INT: {
+                    int offset = code[ip++];
+                    sp -= 2;
+                    if (stack[sp] <= stack[sp + 1]) ip += offset;
+                    break;
+                }
+                case JUMP_UNLESS_GREATER_EQUAL_INT: {
+                    int offset = code[ip++];
+                    sp -= 2;
+                    if (stack[sp] < stack[sp + 1]) ip += offset;
+                    break;
+                }
+                case JUMP_UNLESS_LESS_INT: {
+                    int offset = code[ip++];
+                    sp -= 2;
+                    if (stack[sp] >= stack[sp + 1]) ip += offset;
+                    break;
+                }
+                case JUMP_UNLESS_LESS_EQUAL_INT: {
+                    int offset = code[ip++];
+                    sp -= 2;
+                    if (stack[sp] > stack[sp + 1]) ip += offset;
+                    break;
+                }
+                case RETURN:
+                    return;
+            }
+        }
+    }
+
+    // Double.compare, which also finds two NaNs equal, but NIL equals only NIL.
+    private static boolean equalFloats(long left, long right) {
+        if (left == NIL_BITS || right == NIL_BITS) return left == right;
+        return Double.compare(number(left), number(right)) == 0;
+    }
+
+    private static double number(long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long bits(double number) {
+        return Double.doubleToRawLongBits(number);
+    }
+}